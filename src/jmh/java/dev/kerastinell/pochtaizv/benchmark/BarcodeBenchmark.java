@@ -0,0 +1,31 @@
+package dev.kerastinell.pochtaizv.benchmark;
+
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.PochtaBarcode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация изображения штрихкода кода отслеживания.
+ * Генератор общий для всех потоков, как у задач NormalFormJob.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BarcodeBenchmark {
+	@Param({"PNG", "SVG"})
+	public BarcodeFormat format;
+
+	private PochtaBarcode pochtaBarcode;
+
+	@Setup
+	public void setUp() {
+		pochtaBarcode = new PochtaBarcode();
+	}
+
+	@Benchmark
+	public byte[] generate() {
+		return pochtaBarcode.generate(BenchmarkData.RECORDED_TRACKING_CODE, format);
+	}
+}
@@ -0,0 +1,102 @@
+package dev.kerastinell.pochtaizv.benchmark;
+
+import dev.kerastinell.pochtaizv.util.FormDate;
+import dev.kerastinell.pochtaizv.util.TextUtils;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Данные для бенчмарков: коды отслеживания, данные получателя
+ * и записанный элемент ответа сервера Почты России.
+ */
+class BenchmarkData {
+	// Код отслеживания записанного элемента ответа
+	static final String RECORDED_TRACKING_CODE = "80081234567890";
+	// Элемент ответа в формате fixture-файлов --record, см. FixtureStore
+	private static final String RECORDED_TRACKING_RESOURCE = "/fixtures/tracking/" + RECORDED_TRACKING_CODE + ".json";
+
+	/**
+	 * @param count Количество кодов
+	 * @return Различные коды отслеживания, начиная с {@link #RECORDED_TRACKING_CODE}
+	 */
+	static List<String> trackingCodes(int count) {
+		final ArrayList<String> trackingCodes = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			trackingCodes.add(String.valueOf(Long.parseLong(RECORDED_TRACKING_CODE) + i));
+		return trackingCodes;
+	}
+
+	/**
+	 * Возвращает записанный элемент ответа сервера, относящийся к указанному коду.
+	 * @param trackingCode Код отслеживания
+	 * @return Элемент массива response
+	 */
+	static String recordedTracking(String trackingCode) throws IOException {
+		try (InputStream stream = BenchmarkData.class.getResourceAsStream(RECORDED_TRACKING_RESOURCE)) {
+			return new String(IoUtils.readBytes(stream), StandardCharsets.UTF_8)
+					.replace(RECORDED_TRACKING_CODE, trackingCode);
+		}
+	}
+
+	/**
+	 * @param trackingCode Код отслеживания
+	 * @return Данные для заполнения шаблона, как у задачи после загрузки данных об отправлении
+	 */
+	static HashMap<String, String> templateData(String trackingCode) {
+		final HashMap<String, String> data = new HashMap<>();
+		data.put("Код отслеживания", trackingCode);
+		data.put("Получатель.Имя", "Обоев Рулон Ушатович");
+		data.put("Получатель.Адрес.Указанный", "101000, г. Москва, ул. Мясницкая, д. 1, кв. 1");
+		data.put("Получатель.Адрес.Регистрация", "101000, г. Москва, ул. Мясницкая, д. 1, кв. 1");
+		data.put("Документ.Вид", "Паспорт");
+		data.put("Документ.Серия", "1234");
+		data.put("Документ.Номер", "567890");
+		data.put("Документ.Выдан.Кем", "МВД Шушары");
+		data.putAll(TextUtils.processDate(FormDate.ID_ISSUE, "2010-10-28"));
+		data.putAll(TextUtils.processDate(FormDate.GENERATION, "2024-01-11"));
+		data.putAll(TextUtils.processDate(FormDate.PICKUP, "2024-01-12"));
+
+		data.put("Откуда", "190000, Санкт-Петербург, Невский пр., д. 1");
+		data.put("Вид и категория", "Посылка, Обыкновенная");
+		data.put("С уведомлением", "");
+		data.put("Срок хранения", "26.01.2024");
+		data.put("Разряд", "");
+		data.put("Масса", "1,250 кг");
+		data.put("Объявленная ценность", "");
+		data.put("Наложенный платеж", "");
+		data.put("Плата за возврат", "");
+		data.put("Плата за досыл", "");
+		data.put("Таможенная пошлина", "");
+		data.put("Получатель.Адрес.Выдача", "101000, г. Москва, ул. Мясницкая, д. 26\nпн-пт: 08:00-20:00\nсб: 09:00-18:00");
+		data.put("Вызов курьера", "8 (800) 100-00-00");
+		return data;
+	}
+
+	/**
+	 * Поток, который отбрасывает данные и считает их размер.
+	 */
+	static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			count += length;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+}
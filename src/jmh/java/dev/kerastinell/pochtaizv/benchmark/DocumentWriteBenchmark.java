@@ -0,0 +1,50 @@
+package dev.kerastinell.pochtaizv.benchmark;
+
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.PochtaBarcode;
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
+import dev.kerastinell.pochtaizv.template.DocumentWriter;
+import dev.kerastinell.pochtaizv.template.Notice;
+import dev.kerastinell.pochtaizv.template.TemplateBundle;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка документа из подготовленных извещений: заполнение шаблона,
+ * изображения штрихкодов и для ODG - запись ZIP-архива.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentWriteBenchmark {
+	@Param({"ODG", "FODG"})
+	public DocumentFormat format;
+
+	// Количество извещений (страниц) в документе
+	@Param({"1", "25"})
+	public int notices;
+
+	private DocumentWriter writer;
+	private ArrayList<Notice> documentNotices;
+
+	@Setup
+	public void setUp() throws IOException {
+		writer = format.getWriter(TemplateBundle.getInstance());
+
+		final PochtaBarcode pochtaBarcode = new PochtaBarcode();
+		documentNotices = new ArrayList<>();
+		for (String trackingCode : BenchmarkData.trackingCodes(notices))
+			documentNotices.add(new Notice(trackingCode, BenchmarkData.templateData(trackingCode),
+					pochtaBarcode.generate(trackingCode, BarcodeFormat.PNG), BarcodeFormat.PNG));
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		final BenchmarkData.CountingOutputStream output = new BenchmarkData.CountingOutputStream();
+		writer.write(documentNotices, output);
+		return output.getCount();
+	}
+}
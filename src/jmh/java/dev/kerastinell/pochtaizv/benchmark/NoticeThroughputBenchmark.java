@@ -0,0 +1,91 @@
+package dev.kerastinell.pochtaizv.benchmark;
+
+import dev.kerastinell.pochtaizv.GeneratorConfig;
+import dev.kerastinell.pochtaizv.NoticeGenerator;
+import dev.kerastinell.pochtaizv.job.FormRecord;
+import dev.kerastinell.pochtaizv.standin.FixtureStore;
+import dev.kerastinell.pochtaizv.standin.StandInServer;
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
+import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Генерация извещений целиком: загрузка данных об отправлениях, их разбор,
+ * штрихкоды, заполнение шаблона и запись документа задачами NormalFormJob
+ * в конвейере JobPipeline.
+ *
+ * Вместо сервера Почты России данные отдаёт локальный StandInServer без задержки
+ * и ограничения частоты, поэтому измеряется сама программа, а не сеть.
+ * Результат - количество извещений в секунду.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NoticeThroughputBenchmark {
+	// Извещений в одном документе: полная пачка запроса к серверу
+	private static final int NOTICES = Constants.API_BATCH_SIZE;
+
+	@Param({"ODG", "FODG"})
+	public DocumentFormat format;
+
+	private Path fixtureDirectory;
+	private StandInServer standInServer;
+	private NoticeGenerator generator;
+	private FormRecord record;
+
+	@Setup
+	public void setUp() throws IOException {
+		// Сообщения о каждом запросе и извещении исказили бы измерение
+		GlobalOptions.QUIET = true;
+
+		final List<String> trackingCodes = BenchmarkData.trackingCodes(NOTICES);
+		fixtureDirectory = Files.createTempDirectory("pochtaizv-fixtures");
+		final FixtureStore fixtures = new FixtureStore(fixtureDirectory);
+		for (String trackingCode : trackingCodes)
+			fixtures.saveTracking(trackingCode, BenchmarkData.recordedTracking(trackingCode));
+
+		standInServer = new StandInServer(fixtures, 0, 0, 0, 0);
+		standInServer.start();
+
+		generator = new NoticeGenerator(new GeneratorConfig.Builder()
+				.apiUrl("http://127.0.0.1:" + standInServer.getPort())
+				.apiRate(0)
+				.noCache(true)
+				.format(format)
+				.build());
+
+		record = new FormRecord.Builder()
+				.put("tracks", String.join(";", trackingCodes))
+				.put("name", "Обоев Рулон Ушатович")
+				.put("address", "101000, г. Москва, ул. Мясницкая, д. 1, кв. 1")
+				.put("gen-date", "2024-01-11")
+				.build();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		generator.close();
+		standInServer.stop();
+
+		try (Stream<Path> paths = Files.walk(fixtureDirectory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NOTICES)
+	public long generate() throws IOException {
+		final BenchmarkData.CountingOutputStream output = new BenchmarkData.CountingOutputStream();
+		generator.generate(record, output);
+		return output.getCount();
+	}
+}
@@ -0,0 +1,45 @@
+package dev.kerastinell.pochtaizv.benchmark;
+
+import dev.kerastinell.pochtaizv.template.ContentTemplate;
+import dev.kerastinell.pochtaizv.template.TemplateBundle;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заполнение шаблона content.xml данными одного извещения: целого документа
+ * и страницы документа с несколькими извещениями.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateFillBenchmark {
+	private ContentTemplate contentTemplate;
+	private HashMap<String, String> data;
+	private HashMap<String, String> pageData;
+
+	@Setup
+	public void setUp() throws IOException {
+		contentTemplate = TemplateBundle.getInstance().getContentTemplate();
+		data = BenchmarkData.templateData(BenchmarkData.RECORDED_TRACKING_CODE);
+
+		pageData = new HashMap<>(data);
+		pageData.put(ContentTemplate.PAGE_NAME_KEY, "page1");
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		final BenchmarkData.CountingOutputStream output = new BenchmarkData.CountingOutputStream();
+		contentTemplate.write(data, output);
+		return output.getCount();
+	}
+
+	@Benchmark
+	public long writePage() throws IOException {
+		final BenchmarkData.CountingOutputStream output = new BenchmarkData.CountingOutputStream();
+		contentTemplate.writePage(pageData, output);
+		return output.getCount();
+	}
+}
@@ -0,0 +1,42 @@
+package dev.kerastinell.pochtaizv.benchmark;
+
+import dev.kerastinell.pochtaizv.TrackingRecord;
+import dev.kerastinell.pochtaizv.values.Constants;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Потоковый разбор ответа сервера Почты России, собранного из записанных
+ * элементов так же, как его собирает StandInServer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackingParseBenchmark {
+	// Количество отправлений в ответе: один код или полная пачка
+	@Param({"1", "" + Constants.API_BATCH_SIZE})
+	public int batchSize;
+
+	private String response;
+
+	@Setup
+	public void setUp() throws IOException {
+		final StringBuilder json = new StringBuilder("{\"response\":[");
+		final List<String> trackingCodes = BenchmarkData.trackingCodes(batchSize);
+		for (int i = 0; i < trackingCodes.size(); i++) {
+			if (i > 0)
+				json.append(',');
+			json.append(BenchmarkData.recordedTracking(trackingCodes.get(i)));
+		}
+		response = json.append("]}").toString();
+	}
+
+	@Benchmark
+	public List<TrackingRecord> readResponse() throws IOException {
+		return TrackingRecord.readResponse(new StringReader(response));
+	}
+}
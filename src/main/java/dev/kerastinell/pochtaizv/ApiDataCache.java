@@ -0,0 +1,197 @@
+package dev.kerastinell.pochtaizv;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Кэш данных об отправлениях, загруженных с сервера Почты России.
+ *
+ * Хранит уже разобранные данные для заполнения шаблона по кодам отслеживания
+ * вместе со временем их загрузки. Записи старше заданного срока не считаются
+ * актуальными, но могут использоваться, когда сервер недоступен. Количество
+ * записей ограничено: при переполнении удаляются самые старые.
+ *
+ * Файл кэша имеет компактный двоичный формат: таблица ключей шаблона
+ * записывается единожды, а для каждой записи хранятся только значения.
+ */
+public class ApiDataCache {
+	private static final int MAGIC = 0x50495a43; // PIZC
+	private static final int VERSION = 1;
+
+	private final Path file;
+	private final long ttlMillis;
+	private final int maxEntries;
+	// Записи в порядке загрузки, от самой старой к самой новой
+	private final LinkedHashMap<String, Entry> entries;
+	private boolean modified;
+
+	private ApiDataCache(Path file, long ttlMillis, int maxEntries) {
+		this.file = file;
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		entries = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Возвращает отключенный кэш, который ничего не хранит.
+	 * @return Пустой кэш
+	 */
+	public static ApiDataCache disabled() {
+		return new ApiDataCache(null, 0, 0);
+	}
+
+	/**
+	 * Загружает кэш из файла. Если файл не существует или повреждён, кэш будет пустым.
+	 * @param file Путь к файлу кэша
+	 * @param ttlMillis Срок актуальности записей в миллисекундах
+	 * @param maxEntries Наибольшее количество записей
+	 * @return Загруженный кэш
+	 */
+	public static ApiDataCache load(Path file, long ttlMillis, int maxEntries) {
+		final ApiDataCache cache = new ApiDataCache(file, ttlMillis, maxEntries);
+		if (!Files.exists(file))
+			return cache;
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				Logger.verbose("[ApiDataCache] Неизвестный формат файла кэша, кэш будет перезаписан");
+				return cache;
+			}
+
+			final String[] keys = new String[input.readInt()];
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = input.readUTF();
+
+			final int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				final String trackingCode = input.readUTF();
+				final long fetchedAt = input.readLong();
+				final HashMap<String, String> data = new HashMap<>();
+				for (String key : keys)
+					data.put(key, input.readUTF());
+
+				cache.entries.put(trackingCode, new Entry(fetchedAt, data));
+			}
+
+			cache.evict();
+			Logger.verbose(String.format("[ApiDataCache] Загружено записей: %d", cache.entries.size()));
+		} catch (IOException exception) {
+			Logger.error("Ошибка при чтении кэша! Кэш будет перезаписан", exception);
+			cache.entries.clear();
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Возвращает актуальные данные об отправлении.
+	 * @param trackingCode Код отслеживания отправления
+	 * @return Копия данных или null, если данных нет или они устарели
+	 */
+	public synchronized HashMap<String, String> get(String trackingCode) {
+		final Entry entry = entries.get(trackingCode);
+		if (entry == null || System.currentTimeMillis() - entry.fetchedAt > ttlMillis)
+			return null;
+		return new HashMap<>(entry.data);
+	}
+
+	/**
+	 * Возвращает данные об отправлении независимо от их срока актуальности.
+	 * Используется, когда сервер недоступен.
+	 * @param trackingCode Код отслеживания отправления
+	 * @return Копия данных или null, если данных нет
+	 */
+	public synchronized HashMap<String, String> getStale(String trackingCode) {
+		final Entry entry = entries.get(trackingCode);
+		return entry == null ? null : new HashMap<>(entry.data);
+	}
+
+	/**
+	 * Сохраняет данные об отправлении в кэш.
+	 * @param trackingCode Код отслеживания отправления
+	 * @param data Данные для заполнения шаблона
+	 */
+	public synchronized void put(String trackingCode, Map<String, String> data) {
+		if (maxEntries <= 0)
+			return;
+
+		// Обновлённая запись перемещается в конец как самая новая
+		entries.remove(trackingCode);
+		entries.put(trackingCode, new Entry(System.currentTimeMillis(), new HashMap<>(data)));
+		evict();
+		modified = true;
+	}
+
+	/**
+	 * Записывает кэш в файл, если он изменился.
+	 * Файл сначала записывается во временный, который затем заменяет прежний.
+	 */
+	public synchronized void save() {
+		if (file == null || !modified)
+			return;
+
+		// Таблица ключей, общая для всех записей
+		final LinkedHashSet<String> keySet = new LinkedHashSet<>();
+		for (Entry entry : entries.values())
+			keySet.addAll(entry.data.keySet());
+
+		Path temporary = null;
+		try {
+			final Path directory = Files.createDirectories(file.toAbsolutePath().getParent());
+			// Временный файл у каждой записи свой: файл могут одновременно
+			// записывать несколько генераторов в одном или разных процессах
+			temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+
+				output.writeInt(keySet.size());
+				for (String key : keySet)
+					output.writeUTF(key);
+
+				output.writeInt(entries.size());
+				for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeLong(entry.getValue().fetchedAt);
+					for (String key : keySet)
+						output.writeUTF(entry.getValue().data.getOrDefault(key, ""));
+				}
+			}
+
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			modified = false;
+		} catch (IOException exception) {
+			Logger.error("Ошибка при записи кэша!", exception);
+			IoUtils.deleteQuietly(temporary);
+		}
+	}
+
+	/**
+	 * Удаляет самые старые записи сверх наибольшего количества.
+	 */
+	private void evict() {
+		final Iterator<Entry> iterator = entries.values().iterator();
+		while (entries.size() > maxEntries && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Запись кэша.
+	 */
+	private static class Entry {
+		final long fetchedAt; // Время загрузки данных с сервера
+		final HashMap<String, String> data;
+
+		Entry(long fetchedAt, HashMap<String, String> data) {
+			this.fetchedAt = fetchedAt;
+			this.data = data;
+		}
+	}
+}
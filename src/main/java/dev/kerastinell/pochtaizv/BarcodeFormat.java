@@ -0,0 +1,52 @@
+package dev.kerastinell.pochtaizv;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+
+/**
+ * Формат изображения штрихкода в документе.
+ */
+public enum BarcodeFormat {
+	// Растровое изображение, как в шаблоне
+	PNG("png", "image/png"),
+	// Векторное изображение: полосы штрихкода записываются фигурами
+	// и печатаются чётко при любом разрешении
+	SVG("svg", "image/svg+xml");
+
+	private final String extension;
+	private final String mediaType;
+
+	BarcodeFormat(String extension, String mediaType) {
+		this.extension = extension;
+		this.mediaType = mediaType;
+	}
+
+	/**
+	 * Возвращает расширение файла изображения.
+	 * @return Расширение файла без точки
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Возвращает MIME-тип изображения.
+	 * @return MIME-тип изображения
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Преобразует формат изображения штрихкода из параметра командной строки.
+	 * @param value Значение параметра
+	 * @return Формат изображения. При нераспознанном значении - null
+	 */
+	public static BarcodeFormat fromCli(String value) {
+		for (BarcodeFormat format : values())
+			if (format.extension.equalsIgnoreCase(value))
+				return format;
+
+		Logger.verbose("Неизвестный формат штрихкода: " + value);
+		return null;
+	}
+}
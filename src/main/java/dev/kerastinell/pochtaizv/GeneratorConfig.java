@@ -0,0 +1,250 @@
+package dev.kerastinell.pochtaizv;
+
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
+import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.nio.file.Path;
+
+/**
+ * Неизменяемые параметры генерации извещений: обращение к серверу Почты России,
+ * кэш, параллельность и форматы документа.
+ *
+ * {@link PochtaDataFetcher}, {@link dev.kerastinell.pochtaizv.job.JobPipeline}
+ * и задачи читают параметры только отсюда, поэтому несколько генераторов
+ * с разными параметрами могут работать в одном процессе одновременно.
+ * Параметры командной строки преобразуются методом {@link #fromGlobalOptions()}.
+ */
+public final class GeneratorConfig {
+	private final boolean offline;
+	private final boolean noCache;
+	private final long cacheTtlHours;
+	private final double apiRate;
+	private final int apiMaxRequests;
+	private final String apiUrl;
+	private final String userAgent;
+	private final Path recordDir;
+	private final int threads;
+	private final long jobTimeoutSeconds;
+	private final long runTimeoutSeconds;
+	private final DocumentFormat format;
+	private final BarcodeFormat barcodeFormat;
+
+	private GeneratorConfig(Builder builder) {
+		offline = builder.offline;
+		noCache = builder.noCache;
+		cacheTtlHours = builder.cacheTtlHours;
+		apiRate = builder.apiRate;
+		apiMaxRequests = Math.max(1, builder.apiMaxRequests);
+		apiUrl = builder.apiUrl.endsWith("/") ? builder.apiUrl.substring(0, builder.apiUrl.length() - 1) : builder.apiUrl;
+		userAgent = builder.userAgent;
+		recordDir = builder.recordDir;
+		threads = Math.max(1, builder.threads);
+		jobTimeoutSeconds = builder.jobTimeoutSeconds;
+		runTimeoutSeconds = builder.runTimeoutSeconds;
+		format = builder.format;
+		barcodeFormat = builder.barcodeFormat;
+	}
+
+	/**
+	 * Создаёт параметры из значений, заданных в командной строке.
+	 * @return Параметры генерации
+	 */
+	public static GeneratorConfig fromGlobalOptions() {
+		return new Builder()
+				.offline(GlobalOptions.OFFLINE)
+				.noCache(GlobalOptions.NO_CACHE)
+				.cacheTtlHours(GlobalOptions.CACHE_TTL_HOURS)
+				.apiRate(GlobalOptions.API_RATE)
+				.apiMaxRequests(GlobalOptions.API_MAX_REQUESTS)
+				.apiUrl(GlobalOptions.API_URL)
+				.userAgent(GlobalOptions.API_USER_AGENT)
+				.recordDir(GlobalOptions.RECORD_DIR)
+				.threads(GlobalOptions.THREADS)
+				.jobTimeoutSeconds(GlobalOptions.JOB_TIMEOUT_SECONDS)
+				.runTimeoutSeconds(GlobalOptions.RUN_TIMEOUT_SECONDS)
+				.format(GlobalOptions.FORMAT)
+				.barcodeFormat(GlobalOptions.BARCODE_FORMAT)
+				.build();
+	}
+
+	public boolean isOffline() {
+		return offline;
+	}
+
+	public boolean isNoCache() {
+		return noCache;
+	}
+
+	public long getCacheTtlHours() {
+		return cacheTtlHours;
+	}
+
+	public double getApiRate() {
+		return apiRate;
+	}
+
+	public int getApiMaxRequests() {
+		return apiMaxRequests;
+	}
+
+	public String getApiUrl() {
+		return apiUrl;
+	}
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	public Path getRecordDir() {
+		return recordDir;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getJobTimeoutSeconds() {
+		return jobTimeoutSeconds;
+	}
+
+	public long getRunTimeoutSeconds() {
+		return runTimeoutSeconds;
+	}
+
+	public DocumentFormat getFormat() {
+		return format;
+	}
+
+	public BarcodeFormat getBarcodeFormat() {
+		return barcodeFormat;
+	}
+
+	/**
+	 * Построитель параметров. Значения по-умолчанию совпадают
+	 * со значениями по-умолчанию параметров командной строки.
+	 */
+	public static class Builder {
+		private boolean offline = false;
+		private boolean noCache = false;
+		private long cacheTtlHours = 24;
+		private double apiRate = 2;
+		private int apiMaxRequests = 4;
+		private String apiUrl = Constants.API_URL_DEFAULT;
+		private String userAgent = Constants.API_USER_AGENT_DEFAULT;
+		private Path recordDir = null;
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private long jobTimeoutSeconds = 120;
+		private long runTimeoutSeconds = 0;
+		private DocumentFormat format = DocumentFormat.ODG;
+		private BarcodeFormat barcodeFormat = BarcodeFormat.PNG;
+
+		/**
+		 * @param offline Не обращаться к серверу, использовать только кэш (--offline)
+		 */
+		public Builder offline(boolean offline) {
+			this.offline = offline;
+			return this;
+		}
+
+		/**
+		 * @param noCache Не использовать кэш и сохранённую сессию (--no-cache)
+		 */
+		public Builder noCache(boolean noCache) {
+			this.noCache = noCache;
+			return this;
+		}
+
+		/**
+		 * @param cacheTtlHours Срок актуальности данных в кэше, в часах (--cache-ttl)
+		 */
+		public Builder cacheTtlHours(long cacheTtlHours) {
+			this.cacheTtlHours = cacheTtlHours;
+			return this;
+		}
+
+		/**
+		 * @param apiRate Наибольшая частота запросов в секунду, 0 - без ограничения (--rate)
+		 */
+		public Builder apiRate(double apiRate) {
+			this.apiRate = apiRate;
+			return this;
+		}
+
+		/**
+		 * @param apiMaxRequests Наибольшее количество одновременных запросов (--max-requests)
+		 */
+		public Builder apiMaxRequests(int apiMaxRequests) {
+			this.apiMaxRequests = apiMaxRequests;
+			return this;
+		}
+
+		/**
+		 * @param apiUrl Адрес сервера (--api-url)
+		 */
+		public Builder apiUrl(String apiUrl) {
+			this.apiUrl = apiUrl;
+			return this;
+		}
+
+		/**
+		 * @param userAgent User agent запросов к серверу (--user-agent)
+		 */
+		public Builder userAgent(String userAgent) {
+			this.userAgent = userAgent;
+			return this;
+		}
+
+		/**
+		 * @param recordDir Директория для записи ответов сервера или null (--record)
+		 */
+		public Builder recordDir(Path recordDir) {
+			this.recordDir = recordDir;
+			return this;
+		}
+
+		/**
+		 * @param threads Количество потоков, заполняющих извещения (--threads)
+		 */
+		public Builder threads(int threads) {
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * @param jobTimeoutSeconds Срок выполнения одной задачи, 0 - без ограничения (--job-timeout)
+		 */
+		public Builder jobTimeoutSeconds(long jobTimeoutSeconds) {
+			this.jobTimeoutSeconds = jobTimeoutSeconds;
+			return this;
+		}
+
+		/**
+		 * @param runTimeoutSeconds Срок выполнения задач, переданных вместе, 0 - без ограничения (--timeout)
+		 */
+		public Builder runTimeoutSeconds(long runTimeoutSeconds) {
+			this.runTimeoutSeconds = runTimeoutSeconds;
+			return this;
+		}
+
+		/**
+		 * @param format Формат документа (--format)
+		 */
+		public Builder format(DocumentFormat format) {
+			this.format = format;
+			return this;
+		}
+
+		/**
+		 * @param barcodeFormat Формат изображения штрихкода (--barcode)
+		 */
+		public Builder barcodeFormat(BarcodeFormat barcodeFormat) {
+			this.barcodeFormat = barcodeFormat;
+			return this;
+		}
+
+		public GeneratorConfig build() {
+			return new GeneratorConfig(this);
+		}
+	}
+}
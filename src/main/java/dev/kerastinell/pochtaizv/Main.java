@@ -1,10 +1,19 @@
 package dev.kerastinell.pochtaizv;
 
+import dev.kerastinell.pochtaizv.job.AbstractJob;
+import dev.kerastinell.pochtaizv.job.JobPipeline;
 import dev.kerastinell.pochtaizv.job.impl.*;
+import dev.kerastinell.pochtaizv.server.NoticeServer;
+import dev.kerastinell.pochtaizv.standin.StandInServer;
+import dev.kerastinell.pochtaizv.stats.Stats;
 import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.values.Constants;
 import dev.kerastinell.pochtaizv.values.GlobalOptions;
 
-import java.util.concurrent.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 	public static void main(String[] args) {
@@ -16,25 +25,69 @@ public class Main {
 	 * @param args Параметры командной строки
 	 */
 	private void run(String[] args) {
+		// Вместо генерации извещений запустить локальный сервер, подменяющий сервер Почты России
+		final StandInServer standInServer = StandInServer.fromArgs(args);
+		if (standInServer != null) {
+			try {
+				standInServer.start();
+			} catch (IOException exception) {
+				Logger.error("Ошибка при запуске сервера!", exception);
+			}
+			return;
+		}
+
 		PochtaDataFetcher pochtaDataFetcher = new PochtaDataFetcher();
 
 		// Загрузить данные для заполнения извещения из параметров командной строки
 		new InitialFormDataJob(args, pochtaDataFetcher).run();
 
-		// Запуск параллельных задач по генерации извещений
-		final ExecutorService jobExecutor = Executors.newFixedThreadPool(3);
-		if (GlobalOptions.EMPTY)
-			jobExecutor.execute(new EmptyFormJob());
-		else for (String trackingCode : GlobalOptions.TRACKING_CODES)
-			jobExecutor.execute(new NormalFormJob(trackingCode, pochtaDataFetcher));
-
-		// Ожидание завершения задач
-		jobExecutor.shutdown();
-		try {
-			jobExecutor.awaitTermination(1, TimeUnit.MINUTES);
-		} catch (InterruptedException exception) {
-			Logger.error("Ожидание завершения задач прервано!", exception);
+		// Запуск задач по генерации извещений: данные об отправлениях загружаются
+		// пачками, а извещения заполняются параллельно по мере загрузки
+		final JobPipeline pipeline = new JobPipeline(pochtaDataFetcher);
+
+		// Сервер генерации извещений получает данные в запросах и работает
+		// до завершения программы, после чего сам завершает конвейер
+		if (GlobalOptions.SERVE_PORT > 0 && !GlobalOptions.EMPTY) {
+			new NoticeServer(pochtaDataFetcher, pipeline, GlobalOptions.SERVE_PORT, GlobalOptions.SERVE_DIR).run();
+			return;
+		}
+
+		// При завершении программы (Ctrl-C) незавершённые задачи отменяются.
+		// Итоги подводит основной поток, обработчик лишь дожидается его
+		final CountDownLatch finished = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			pipeline.cancel();
+			try {
+				finished.await(Constants.SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ignored) {
+			}
+			Logger.flush();
+		}, "Main Shutdown Thread"));
+
+		// Пакетная генерация: извещения для каждой записи с собственными данными получателя
+		if (GlobalOptions.BATCH_SOURCE != null && !GlobalOptions.EMPTY) {
+			new BatchJob(GlobalOptions.BATCH_SOURCE, pochtaDataFetcher, pipeline).run();
+		} else {
+			final ArrayList<AbstractJob> jobs = new ArrayList<>();
+			if (GlobalOptions.EMPTY)
+				jobs.add(new EmptyFormJob());
+			else for (String trackingCode : GlobalOptions.TRACKING_CODES)
+				jobs.add(new NormalFormJob(trackingCode, pochtaDataFetcher));
+
+			// В режиме наблюдения извещения генерируются по мере прибытия отправлений.
+			// Иначе все извещения записываются страницами одного документа, если так
+			// указал пользователь или если документ записывается в стандартный вывод
+			if (GlobalOptions.WATCH && !GlobalOptions.EMPTY)
+				new WatchJob(GlobalOptions.TRACKING_CODES, pochtaDataFetcher, pipeline).run();
+			else if (GlobalOptions.STDOUT || (GlobalOptions.SINGLE_FILE && jobs.size() > 1))
+				new MergedFormJob(jobs, pipeline).run();
+			else pipeline.run(jobs);
 		}
+
+		pipeline.shutdown();
 		pochtaDataFetcher.finish();
+		pipeline.getSummary().print();
+		Stats.finish(pipeline.getSummary());
+		finished.countDown();
 	}
 }
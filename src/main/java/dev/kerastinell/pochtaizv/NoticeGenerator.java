@@ -0,0 +1,138 @@
+package dev.kerastinell.pochtaizv;
+
+import dev.kerastinell.pochtaizv.job.AbstractJob;
+import dev.kerastinell.pochtaizv.job.FormRecord;
+import dev.kerastinell.pochtaizv.job.JobPipeline;
+import dev.kerastinell.pochtaizv.job.JobSummary;
+import dev.kerastinell.pochtaizv.job.PreparedNotices;
+import dev.kerastinell.pochtaizv.job.impl.NormalFormJob;
+import dev.kerastinell.pochtaizv.template.Notice;
+import dev.kerastinell.pochtaizv.template.TemplateBundle;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+
+/**
+ * Генератор извещений для использования из других программ.
+ *
+ * Параметры генератора задаются неизменяемым {@link GeneratorConfig}, данные
+ * извещений - неизменяемыми записями {@link FormRecord}, глобальные параметры
+ * командной строки не используются и не изменяются. Экземпляр можно использовать
+ * из разных потоков одновременно: данные об отправлениях загружаются и извещения
+ * заполняются общим конвейером, а сессия и кэш используются всеми запросами.
+ *
+ * <pre>
+ * try (NoticeGenerator generator = new NoticeGenerator(new GeneratorConfig.Builder().build())) {
+ *     byte[] document = generator.generate(new FormRecord.Builder()
+ *             .put("name", "Иванов Иван Иванович")
+ *             .put("tracks", "80081234567890")
+ *             .build());
+ * }
+ * </pre>
+ */
+public class NoticeGenerator implements Closeable {
+	private final GeneratorConfig config;
+	private final PochtaDataFetcher pochtaDataFetcher;
+	private final JobPipeline pipeline;
+
+	/**
+	 * Создаёт генератор и инициализирует сессию сервера Почты России.
+	 * Если инициализация не удалась, генератор работает в оффлайн-режиме.
+	 * @param config Параметры генерации
+	 */
+	public NoticeGenerator(GeneratorConfig config) {
+		this.config = config;
+
+		pochtaDataFetcher = new PochtaDataFetcher();
+		pochtaDataFetcher.initialize(config);
+		pochtaDataFetcher.waitForInitialization();
+		pipeline = new JobPipeline(pochtaDataFetcher);
+	}
+
+	/**
+	 * Генерирует документ, в котором каждое извещение записи занимает отдельную
+	 * страницу. Для записи без кодов отслеживания генерируется одно извещение без штрихкода.
+	 * @param record Данные извещений
+	 * @return Содержимое документа в формате {@link GeneratorConfig#getFormat()}
+	 * @throws IOException Если хотя бы одно извещение не удалось подготовить или записать
+	 */
+	public byte[] generate(FormRecord record) throws IOException {
+		final ByteArrayOutputStream document = new ByteArrayOutputStream();
+		generate(record, document);
+		return document.toByteArray();
+	}
+
+	/**
+	 * Генерирует документ и записывает его в канал. Канал не закрывается.
+	 * @see #generate(FormRecord)
+	 * @param record Данные извещений
+	 * @param channel Канал, в который записывается документ
+	 */
+	public void generate(FormRecord record, WritableByteChannel channel) throws IOException {
+		generate(record, Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Генерирует документ и записывает его в поток. Поток не закрывается.
+	 * @see #generate(FormRecord)
+	 * @param record Данные извещений
+	 * @param stream Поток, в который записывается документ
+	 */
+	public void generate(FormRecord record, OutputStream stream) throws IOException {
+		final List<Notice> notices = prepare(record);
+
+		// DocumentWriter закрывает поток по завершении записи, а поток принадлежит вызывающему
+		config.getFormat().getWriter(TemplateBundle.getInstance()).write(notices, new FilterOutputStream(stream) {
+			@Override
+			public void write(byte[] bytes, int offset, int length) throws IOException {
+				out.write(bytes, offset, length);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * Загружает данные об отправлениях записи и подготавливает извещения.
+	 * @param record Данные извещений
+	 * @return Извещения в порядке кодов отслеживания
+	 * @throws IOException Если хотя бы одно извещение не удалось подготовить
+	 */
+	private List<Notice> prepare(FormRecord record) throws IOException {
+		final List<String> trackingCodes = record.getTrackingCodes().isEmpty() ?
+				Collections.singletonList("") : record.getTrackingCodes();
+		final Map<String, String> formData = record.getFormData(Collections.emptyMap());
+
+		final ArrayList<AbstractJob> jobs = new ArrayList<>();
+		for (String trackingCode : trackingCodes)
+			jobs.add(new NormalFormJob(trackingCode, formData, pochtaDataFetcher));
+
+		final PreparedNotices prepared = pipeline.prepare(jobs);
+		if (!prepared.getFailed().isEmpty())
+			throw new IOException("Не удалось подготовить извещения: " + String.join(", ", prepared.getFailed()),
+					prepared.getCause());
+		return prepared.getNotices();
+	}
+
+	/**
+	 * Возвращает итоги всех извещений, подготовленных генератором.
+	 * @return Итоги выполнения задач
+	 */
+	public JobSummary getSummary() {
+		return pipeline.getSummary();
+	}
+
+	/**
+	 * Завершает работу потоков генератора и сохраняет кэш и сессию.
+	 */
+	@Override
+	public void close() {
+		pipeline.shutdown();
+		pochtaDataFetcher.finish();
+	}
+}
@@ -1,18 +1,22 @@
 package dev.kerastinell.pochtaizv;
 
-import dev.kerastinell.pochtaizv.util.Logger;
-import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import dev.kerastinell.pochtaizv.util.io.PngEncoder;
 import uk.org.okapibarcode.backend.Code128;
 import uk.org.okapibarcode.backend.HumanReadableLocation;
-import uk.org.okapibarcode.output.Java2DRenderer;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.*;
+import java.awt.geom.Rectangle2D;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Обертка над Code128 для создания штрихкодов.
+ *
+ * Изображение строится напрямую из полос штрихкода без AWT и ImageIO:
+ * все полосы Code128 одной высоты, поэтому строка пикселей с полосами
+ * вычисляется единожды и повторяется на всю высоту штрихкода (PNG)
+ * либо каждая полоса записывается одним прямоугольником (SVG).
+ * Один экземпляр может использоваться одновременно из разных потоков.
  * @see uk.org.okapibarcode.backend.Code128
  */
 public class PochtaBarcode extends Code128 {
@@ -24,32 +28,122 @@ public class PochtaBarcode extends Code128 {
 		setHumanReadableLocation(HumanReadableLocation.NONE); // Отключение отрисовки текста на изображении
 	}
 
+	/**
+	 * Генерирует штрихкод в формате PNG.
+	 * @param input Входные данные
+	 * @return Содержимое PNG-файла с изображением штрихкода
+	 */
+	public byte[] generate(String input) {
+		return generate(input, BarcodeFormat.PNG);
+	}
+
 	/**
 	 * Генерирует штрихкод.
 	 * @param input Входные данные
-	 * @return Поток с изображением штрихкода
+	 * @param format Формат изображения
+	 * @return Содержимое файла с изображением штрихкода
 	 */
-	public InputStream generate(String input) {
-		ByteArrayOutputStream pngOutputStream = null;
-		InputStream barcodeImageStream;
+	public byte[] generate(String input, BarcodeFormat format) {
+		final Bars bars = encode(input);
+
+		switch (format) {
+			case SVG:
+				return toSvg(bars);
+			case PNG:
+			default:
+				return toPng(bars);
+		}
+	}
 
-		try {
+	/**
+	 * Кодирует входные данные в полосы штрихкода.
+	 * @param input Входные данные
+	 * @return Полосы штрихкода в пикселях изображения
+	 */
+	private Bars encode(String input) {
+		final Bars result = new Bars();
+		result.top = Integer.MAX_VALUE;
+
+		// Кодирование меняет состояние символа, поэтому выполняется по очереди
+		synchronized (this) {
 			setContent(input);
 
-			BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-			Java2DRenderer renderer = new Java2DRenderer(image.createGraphics(), 1, Color.WHITE, Color.BLACK);
-			renderer.render(this);
-
-			pngOutputStream = new ByteArrayOutputStream();
-			ImageIO.write(image, "png", pngOutputStream);
-			barcodeImageStream = new ByteArrayInputStream(pngOutputStream.toByteArray());
-		} catch (IOException exception) {
-			Logger.error("Ошибка при генерации штрихкода!", exception);
-			barcodeImageStream = new ByteArrayInputStream(new byte[0]);
-		} finally {
-			IoUtils.closeOutputStream(pngOutputStream);
+			result.width = getWidth();
+			result.height = getHeight();
+			final List<Rectangle2D.Double> bars = getRectangles();
+
+			// Отступы вокруг штрихкода одинаковы с обеих сторон
+			double symbolWidth = 0;
+			double symbolHeight = 0;
+			for (Rectangle2D.Double bar : bars) {
+				symbolWidth = Math.max(symbolWidth, bar.x + bar.width);
+				symbolHeight = Math.max(symbolHeight, bar.y + bar.height);
+			}
+			final double marginX = (result.width - symbolWidth) / 2;
+			final double marginY = (result.height - symbolHeight) / 2;
+
+			result.black = new boolean[result.width];
+			for (Rectangle2D.Double bar : bars) {
+				final int left = (int) Math.max(Math.round(bar.x + marginX), 0);
+				final int right = (int) Math.min(Math.round(bar.x + bar.width + marginX), result.width);
+				Arrays.fill(result.black, left, Math.max(left, right), true);
+
+				result.top = (int) Math.min(result.top, Math.round(bar.y + marginY));
+				result.bottom = (int) Math.max(result.bottom, Math.round(bar.y + bar.height + marginY));
+			}
 		}
 
-		return barcodeImageStream;
+		return result;
+	}
+
+	private static byte[] toPng(Bars bars) {
+		final byte[] barRow = PngEncoder.packRow(bars.black);
+		final byte[] whiteRow = PngEncoder.packRow(new boolean[bars.width]);
+
+		final byte[][] rows = new byte[bars.height][];
+		for (int y = 0; y < bars.height; y++)
+			rows[y] = y >= bars.top && y < bars.bottom ? barRow : whiteRow;
+
+		return PngEncoder.encode(bars.width, rows);
+	}
+
+	private static byte[] toSvg(Bars bars) {
+		final StringBuilder svg = new StringBuilder(1024)
+				.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\"")
+				.append(" width=\"").append(bars.width).append("\" height=\"").append(bars.height).append('"')
+				.append(" viewBox=\"0 0 ").append(bars.width).append(' ').append(bars.height).append('"')
+				.append(" shape-rendering=\"crispEdges\">")
+				.append("<rect width=\"").append(bars.width).append("\" height=\"").append(bars.height).append("\" fill=\"#fff\"/>")
+				.append("<path fill=\"#000\" d=\"");
+
+		// Каждая полоса - прямоугольник из последовательных чёрных пикселей
+		final int barHeight = Math.max(bars.bottom - bars.top, 0);
+		for (int x = 0; x < bars.width; x++) {
+			if (!bars.black[x])
+				continue;
+
+			final int left = x;
+			while (x < bars.width && bars.black[x])
+				x++;
+			svg.append('M').append(left).append(' ').append(bars.top)
+					.append('h').append(x - left)
+					.append('v').append(barHeight)
+					.append('h').append(left - x).append('z');
+		}
+
+		svg.append("\"/></svg>\n");
+		return svg.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Полосы штрихкода, приведённые к пикселям изображения.
+	 */
+	private static class Bars {
+		int width; // Размеры изображения вместе с отступами
+		int height;
+		boolean[] black; // Пиксели строки, занятые полосами
+		int top; // Верхняя и нижняя границы полос
+		int bottom;
 	}
 }
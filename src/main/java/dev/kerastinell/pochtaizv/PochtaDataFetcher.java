@@ -1,67 +1,183 @@
 package dev.kerastinell.pochtaizv;
 
+import dev.kerastinell.pochtaizv.net.*;
+import dev.kerastinell.pochtaizv.standin.FixtureStore;
+import dev.kerastinell.pochtaizv.stats.Stage;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.util.Concurrency;
 import dev.kerastinell.pochtaizv.util.Logger;
 import dev.kerastinell.pochtaizv.util.TextUtils;
 import dev.kerastinell.pochtaizv.util.io.IoUtils;
 import dev.kerastinell.pochtaizv.values.Constants;
-import dev.kerastinell.pochtaizv.values.GlobalOptions;
 import okhttp3.*;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.stream.IntStream;
+import java.io.Reader;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Класс для взаимодействия с сервером Почты России и
  * загрузки оттуда данных об отправлениях.
  */
 public class PochtaDataFetcher {
-	private static final String URL_INIT = "https://www.pochta.ru/tracking";
-	private static String URL_TRACKING; // Задаётся единожды при инициализации
-
-	// Клиент для запросов к серверу. Сохраняет cookies.
-	private final OkHttpClient httpClient;
+	private volatile String trackingUrl; // Задаётся при инициализации или берётся из сохранённой сессии
+
+	// Параметры, заданные при инициализации. До инициализации данные
+	// не запрашиваются, как в оффлайн-режиме без кэша
+	private GeneratorConfig config;
+	// Оффлайн-режим: задан в параметрах или включён после ошибки инициализации
+	private volatile boolean offline;
+
+	// Клиент для запросов к серверу. Сохраняет cookies в сессию, ограничивает
+	// частоту запросов и повторяет неудачные. Создаётся при инициализации,
+	// когда известны параметры командной строки
+	private OkHttpClient httpClient;
+	private ResilientInterceptor resilientInterceptor;
+	private final SessionStore session;
+	// Время последней попытки инициализации сессии. 0, если используется сохранённая сессия
+	private volatile long sessionInitializedAt;
 
 	private final Thread initializationThread;
 
+	// Загруженные данные об отправлениях по кодам отслеживания
+	private final ConcurrentHashMap<String, HashMap<String, String>> fetchedApiData;
+	// Данные, сохранённые при предыдущих запусках программы
+	private ApiDataCache apiDataCache;
+	// Коды, данные о которых не удалось получить от сервера
+	private final Set<String> degradedCodes;
+	// Хэши истории отслеживания из последних ответов сервера и коды
+	// отправлений, прибывших в место вручения (для режима наблюдения)
+	private final ConcurrentHashMap<String, Integer> historyHashes;
+	private final Set<String> readyCodes;
+	// Запись ответов сервера для локального сервера --stand-in, если задана
+	private FixtureStore recorder;
+
 	public PochtaDataFetcher() {
-		httpClient = new OkHttpClient();
-		initializationThread = new Thread(this::getCookies, "PochtaDataFetcher Initialization Thread");
+		session = new SessionStore(TimeUnit.HOURS.toMillis(Constants.SESSION_MAX_AGE_HOURS));
+		initializationThread = new Thread(this::initializeSession, "PochtaDataFetcher Initialization Thread");
+		fetchedApiData = new ConcurrentHashMap<>();
+		apiDataCache = ApiDataCache.disabled();
+		degradedCodes = ConcurrentHashMap.newKeySet();
+		historyHashes = new ConcurrentHashMap<>();
+		readyCodes = ConcurrentHashMap.newKeySet();
+
+		config = new GeneratorConfig.Builder().offline(true).build();
+		offline = true;
 	}
 
 	/**
-	 * Запускает поток инициализации.
+	 * Загружает кэш и сохранённую сессию. Если действительной сессии
+	 * нет, запускает поток инициализации.
+	 * @param config Параметры обращения к серверу и кэша
 	 */
-	public void initialize() {
-		if (!GlobalOptions.OFFLINE)
+	public void initialize(GeneratorConfig config) {
+		this.config = config;
+		offline = config.isOffline();
+
+		if (!config.isNoCache())
+			apiDataCache = ApiDataCache.load(Constants.USER_DATA_DIR_PATH.resolve(Constants.API_CACHE_FILE),
+					TimeUnit.HOURS.toMillis(config.getCacheTtlHours()), Constants.API_CACHE_MAX_ENTRIES);
+
+		if (config.getRecordDir() != null)
+			recorder = new FixtureStore(config.getRecordDir());
+
+		// В оффлайн-режиме сессия не нужна, а клиент и его классы не загружаются
+		if (offline)
+			return;
+
+		// Сохранённая сессия действительна только для сервера Почты России
+		if (!config.isNoCache() && config.getApiUrl().equals(Constants.API_URL_DEFAULT))
+			session.load(Constants.USER_DATA_DIR_PATH.resolve(Constants.SESSION_FILE));
+
+		resilientInterceptor = new ResilientInterceptor(
+				new RateLimiter(config.getApiRate()),
+				new AdaptiveConcurrencyLimit(config.getApiMaxRequests(), TimeUnit.MILLISECONDS.toNanos(Constants.API_SLOW_RESPONSE_MS)),
+				new CircuitBreaker(Constants.API_CIRCUIT_FAILURE_THRESHOLD, TimeUnit.SECONDS.toMillis(Constants.API_CIRCUIT_OPEN_SECONDS)),
+				Constants.API_MAX_RETRIES, Constants.API_RETRY_BASE_DELAY_MS, Constants.API_RETRY_MAX_DELAY_MS);
+		httpClient = new OkHttpClient.Builder()
+				.dispatcher(Concurrency.newDispatcher())
+				.cookieJar(session)
+				.addInterceptor(resilientInterceptor)
+				.build();
+		httpClient.dispatcher().setMaxRequests(config.getApiMaxRequests());
+		httpClient.dispatcher().setMaxRequestsPerHost(config.getApiMaxRequests());
+
+		final String savedTrackingUrl = session.getTrackingUrl();
+		if (savedTrackingUrl != null) {
+			Logger.verbose("[PochtaDataFetcher] Используется сохранённая сессия");
+			trackingUrl = savedTrackingUrl;
+		} else {
+			session.clear();
 			initializationThread.start();
+		}
 	}
 
 	/**
-	 * Завершает работу.
+	 * Завершает работу, сохраняет кэш и сессию, сообщает о кодах,
+	 * данные о которых не удалось получить от сервера.
 	 */
 	public void finish() {
-		httpClient.connectionPool().evictAll();
+		if (httpClient != null) {
+			// Потоки асинхронных запросов иначе задержат завершение программы
+			httpClient.dispatcher().executorService().shutdown();
+			httpClient.connectionPool().evictAll();
+
+			final String summary = resilientInterceptor.getSummary();
+			if (summary != null)
+				Logger.verbose("[PochtaDataFetcher] " + summary);
+		}
+
+		if (!degradedCodes.isEmpty())
+			Logger.error(String.format("Не удалось получить данные от сервера для отправлений (%d шт.): %s",
+					degradedCodes.size(), String.join(", ", new TreeSet<>(degradedCodes))));
+
+		save();
+	}
+
+	/**
+	 * Сохраняет кэш и сессию, не завершая работу.
+	 */
+	public void save() {
+		apiDataCache.save();
+		session.save();
+	}
+
+	/**
+	 * Первичная инициализация сессии, выполняется в отдельном потоке.
+	 * В случае ошибки включается оффлайн-режим, см. {@link #isOffline()}
+	 */
+	private void initializeSession() {
+		try {
+			getCookies();
+		} catch (IOException exception) {
+			Logger.error("Ошибка при инициализации! Будет включен оффлайн-режим", exception);
+
+			offline = true;
+		}
 	}
 
 	/**
-	 * Первично обращается к серверу Почты России, сохраняет cookies
+	 * Обращается к серверу Почты России, сохраняет cookies
 	 * и извлекает API endpoint для отслеживания отправлений.
 	 *
-	 * Функция выполняется в отдельном потоке.
-	 *
-	 * В случае ошибки устанавливается флаг {@link GlobalOptions#OFFLINE}
+	 * Функция выполняется при первичной инициализации, а также повторно,
+	 * если сервер отклонил сессию, см. {@link #refreshSession()}
+	 * @throws IOException Если сессию не удалось инициализировать
 	 */
-	private void getCookies() {
+	private void getCookies() throws IOException {
+		final Stats.Span span = Stats.start(Stage.SESSION, "");
 		Response initResponse = null;
+		sessionInitializedAt = System.currentTimeMillis();
 
 		try {
 			Logger.verbose("[PochtaDataFetcher] Инициализация");
 
 			final Request initRequest = new Request.Builder()
-					.url(URL_INIT)
+					.url(config.getApiUrl() + Constants.API_INIT_PATH)
 					.addHeader("accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.9")
 					.addHeader("accept-language", "ru-RU,ru;q=0.8,en-US;q=0.5,en;q=0.3")
 					.addHeader("sec-fetch-dest", "document")
@@ -69,180 +185,524 @@ public class PochtaDataFetcher {
 					.addHeader("sec-fetch-site", "none")
 					.addHeader("sec-fetch-user", "?1")
 					.addHeader("upgrade-insecure-requests", "1")
-					.addHeader("user-agent", GlobalOptions.API_USER_AGENT)
+					.addHeader("user-agent", config.getUserAgent())
 					.build();
 
 			initResponse = httpClient.newCall(initRequest).execute();
 			if (!initResponse.isSuccessful())
-				throw new RuntimeException("!initResponse.isSuccessful()");
+				throw new IOException("Код ответа " + initResponse.code());
 
 			Logger.verbose("[PochtaDataFetcher] Извлечение ссылки для отслеживания отправлений");
 			final String html = initResponse.body().string();
+			if (recorder != null)
+				recorder.saveInitPage(html);
 			final String urlKey = "getTrackingsByBarcodesUrl:\"";
-			int idxBegin = html.indexOf(urlKey) + urlKey.length();
+			int idxBegin = html.indexOf(urlKey);
+			if (idxBegin == -1)
+				throw new IOException("Ссылка для отслеживания отправлений не найдена");
+			idxBegin += urlKey.length();
 			int idxEnd = html.indexOf("\"", idxBegin);
-			URL_TRACKING = html.substring(idxBegin, idxEnd);
+			trackingUrl = html.substring(idxBegin, idxEnd);
+			session.setTrackingUrl(trackingUrl);
 
 			Logger.verbose("[PochtaDataFetcher] Инициализация завершена!");
-		} catch (IOException exception) {
-			Logger.error("Ошибка при инициализации! Будет включен оффлайн-режим", exception);
-
-			GlobalOptions.OFFLINE = true;
 		} finally {
 			IoUtils.closeResponse(initResponse);
+			span.end();
 		}
 	}
 
 	/**
 	 * Ожидает завершения потока инициализации.
-	 * В случае ошибки устанавливается флаг {@link GlobalOptions#OFFLINE}
+	 * В случае ошибки включается оффлайн-режим, см. {@link #isOffline()}
 	 */
 	public void waitForInitialization() {
-		if (!GlobalOptions.OFFLINE) try {
+		final Stats.Span span = Stats.start(Stage.INIT_WAIT, "");
+		if (!offline) try {
 			initializationThread.join();
 		} catch (InterruptedException exception) {
 			Logger.error("Ожидание инициализации прервано! Будет включен оффлайн-режим", exception);
 
-			GlobalOptions.OFFLINE = true;
+			offline = true;
+		}
+		span.end();
+	}
+
+	/**
+	 * Проверяет, работает ли загрузка данных в оффлайн-режиме: он задан
+	 * в параметрах или включён после ошибки инициализации. Оффлайн-режим
+	 * относится только к этому экземпляру.
+	 * @return true, если данные берутся только из кэша
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * @return Параметры, заданные при инициализации
+	 */
+	public GeneratorConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Заранее загружает информацию о нескольких отправлениях с сервера Почты России.
+	 * Коды отслеживания запрашиваются пачками по {@link Constants#API_BATCH_SIZE} штук,
+	 * после чего {@link #getApiData(String)} возвращает уже загруженные данные.
+	 *
+	 * Актуальные данные из кэша не запрашиваются повторно. В оффлайн-режиме
+	 * используются данные из кэша независимо от срока их актуальности.
+	 * @param trackingCodes Коды отслеживания отправлений
+	 */
+	public void prefetch(Collection<String> trackingCodes) {
+		prefetchAsync(trackingCodes).join();
+	}
+
+	/**
+	 * Асинхронно загружает информацию о нескольких отправлениях с сервера Почты России.
+	 * Запросы выполняются без блокировки вызывающего потока, одновременно выполняется
+	 * не более {@link GeneratorConfig#getApiMaxRequests()} запросов.
+	 * @see #prefetch(Collection)
+	 * @param trackingCodes Коды отслеживания отправлений
+	 * @return Future, который завершается после загрузки данных обо всех отправлениях.
+	 *         Ошибки запросов обрабатываются внутри, поэтому Future не завершается с ошибкой
+	 */
+	public CompletableFuture<Void> prefetchAsync(Collection<String> trackingCodes) {
+		// Пустые и уже загруженные коды не запрашиваются, повторяющиеся - запрашиваются единожды
+		final ArrayList<String> pending = new ArrayList<>();
+		for (String trackingCode : new LinkedHashSet<>(trackingCodes)) {
+			if (trackingCode.isEmpty() || fetchedApiData.containsKey(trackingCode))
+				continue;
+
+			final HashMap<String, String> cached = offline ?
+					apiDataCache.getStale(trackingCode) : apiDataCache.get(trackingCode);
+			if (cached != null) {
+				Logger.track(trackingCode, "Данные об отправлении загружены из кэша");
+				fetchedApiData.put(trackingCode, cached);
+				// В кэше хранятся только данные прибывших отправлений
+				readyCodes.add(trackingCode);
+			} else if (!offline)
+				pending.add(trackingCode);
 		}
+
+		final ArrayList<CompletableFuture<Void>> batches = new ArrayList<>();
+		for (int i = 0; i < pending.size(); i += Constants.API_BATCH_SIZE)
+			batches.add(fetch(new ArrayList<>(pending.subList(i, Math.min(i + Constants.API_BATCH_SIZE, pending.size())))));
+
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * Заново запрашивает информацию об отправлениях, даже если она уже была загружена.
+	 * Данные прибывших отправлений по-прежнему могут быть взяты из кэша.
+	 * @see #prefetchAsync(Collection)
+	 * @param trackingCodes Коды отслеживания отправлений
+	 * @return Future, который завершается после загрузки данных обо всех отправлениях
+	 */
+	public CompletableFuture<Void> refreshAsync(Collection<String> trackingCodes) {
+		forget(trackingCodes);
+		return prefetchAsync(trackingCodes);
+	}
+
+	/**
+	 * Забывает загруженную информацию об отправлениях. Кэш не изменяется.
+	 * Используется, когда программа работает долго и данные могут устареть.
+	 * @param trackingCodes Коды отслеживания отправлений
+	 */
+	public void forget(Collection<String> trackingCodes) {
+		for (String trackingCode : trackingCodes) {
+			fetchedApiData.remove(trackingCode);
+			historyHashes.remove(trackingCode);
+			readyCodes.remove(trackingCode);
+			degradedCodes.remove(trackingCode);
+		}
+	}
+
+	/**
+	 * Проверяет, не удалось ли получить данные об отправлении от сервера.
+	 * @param trackingCode Код отслеживания отправления
+	 * @return true, если использовались данные из кэша или значения по-умолчанию
+	 */
+	public boolean isDegraded(String trackingCode) {
+		return degradedCodes.contains(trackingCode);
 	}
 
 	/**
-	 * Загружает информацию об отправлении с сервера Почты России.
+	 * Проверяет, прибыло ли отправление в место вручения, по последнему ответу сервера.
+	 * @param trackingCode Код отслеживания отправления
+	 * @return true, если отправление ожидает вручения
+	 */
+	public boolean isReadyForPickup(String trackingCode) {
+		return readyCodes.contains(trackingCode);
+	}
+
+	/**
+	 * Возвращает хэш истории отслеживания из последнего ответа сервера.
+	 * @param trackingCode Код отслеживания отправления
+	 * @return Хэш или null, если сервер не вернул данные об отправлении
+	 */
+	public Integer getHistoryHash(String trackingCode) {
+		return historyHashes.get(trackingCode);
+	}
+
+	/**
+	 * Загружает информацию об отправлении с сервера Почты России. Если информация
+	 * уже была загружена с помощью {@link #prefetch(Collection)}, запрос не выполняется.
 	 * @param trackingCode Код отслеживания отправления
 	 * @return Коллекция с данными для замены в шаблоне извещения
 	 */
 	public HashMap<String, String> getApiData(String trackingCode) {
-		// Инициализация HashMap значениями по-умолчанию
-		final HashMap<String, String> apiData = TextUtils.initHashMap("",
-				"Откуда", "Вид и категория", "С уведомлением", "Срок хранения", "Разряд",
-				"Масса", "Объявленная ценность", "Наложенный платеж", "Плата за возврат",
-				"Плата за досыл", "Таможенная пошлина", "Получатель.Адрес.Выдача", "Вызов курьера");
+		// Строка trackingCode может быть пустой, если пользователь включил тихий режим и не указал коды отслеживания
+		if (trackingCode.isEmpty())
+			return defaultApiData();
 
-		Response trackingResponse = null;
-		String json = "";
+		if (!fetchedApiData.containsKey(trackingCode))
+			prefetch(Collections.singletonList(trackingCode));
 
-		// Строка trackingCode может быть пустой, если пользователь включил тихий режим и не указал коды отслеживания
-		if (trackingCode.isEmpty() || GlobalOptions.OFFLINE)
-			return apiData;
+		return new HashMap<>(fetchedApiData.getOrDefault(trackingCode, defaultApiData()));
+	}
 
-		try {
-			Logger.track(trackingCode, "Запрашиваю данные об отправлении");
+	/**
+	 * Асинхронно запрашивает информацию о пачке отправлений одним запросом и раскладывает
+	 * ответ по кодам отслеживания. Коды, для которых сервер не вернул данные
+	 * или запрос завершился ошибкой, запрашиваются повторно пачками вдвое меньше,
+	 * вплоть до запроса одного кода. Если запросы к серверу приостановлены
+	 * после серии ошибок, коды пачки больше не запрашиваются.
+	 * @param trackingCodes Коды отслеживания отправлений
+	 * @return Future, который завершается после обработки ответов на все запросы
+	 */
+	private CompletableFuture<Void> fetch(List<String> trackingCodes) {
+		if (trackingCodes.size() == 1)
+			Logger.track(trackingCodes.get(0), Stage.FETCH, "Запрашиваю данные об отправлении");
+		else Logger.verbose(String.format("[PochtaDataFetcher] Запрашиваю данные об отправлениях: %d шт.", trackingCodes.size()));
+
+		return call(trackingCodes)
+				// Сохранённая сессия могла истечь на сервере раньше, чем у нас
+				.thenCompose(response -> {
+					if (!isRejected(response) || !refreshSession())
+						return CompletableFuture.completedFuture(response);
+
+					IoUtils.closeResponse(response);
+					return call(trackingCodes);
+				})
+				.handle((response, exception) -> {
+					if (unwrap(exception) instanceof CircuitOpenException) {
+						for (String trackingCode : trackingCodes)
+							fetchedApiData.computeIfAbsent(trackingCode, this::staleApiData);
+					} else if (exception != null)
+						Logger.error("Ошибка при запросе данных!", exception);
+					else readResponse(trackingCodes, response);
+
+					final ArrayList<String> missing = new ArrayList<>();
+					for (String trackingCode : trackingCodes)
+						if (!fetchedApiData.containsKey(trackingCode))
+							missing.add(trackingCode);
+					return missing;
+				})
+				.thenCompose(missing -> {
+					if (missing.isEmpty())
+						return CompletableFuture.completedFuture(null);
+
+					// Один код уже запрашивался отдельно, для него остаются данные
+					// из кэша или значения по-умолчанию
+					if (trackingCodes.size() == 1) {
+						fetchedApiData.put(missing.get(0), staleApiData(missing.get(0)));
+						return CompletableFuture.completedFuture(null);
+					}
+
+					final int half = (missing.size() + 1) / 2;
+					if (half == missing.size())
+						return fetch(missing);
+					return CompletableFuture.allOf(
+							fetch(new ArrayList<>(missing.subList(0, half))),
+							fetch(new ArrayList<>(missing.subList(half, missing.size()))));
+				})
+				.exceptionally(exception -> {
+					Logger.error("Ошибка при обработке данных!", exception);
+					return null;
+				});
+	}
 
-			final RequestBody trackingPostData = new MultipartBody.Builder()
-					.setType(MultipartBody.FORM)
-					.addFormDataPart("barcodes", trackingCode)
-					.build();
+	/**
+	 * Извлекает исходную ошибку из обёртки {@link CompletionException}.
+	 * @param exception Ошибка или null
+	 * @return Исходная ошибка или null
+	 */
+	private static Throwable unwrap(Throwable exception) {
+		while (exception instanceof CompletionException && exception.getCause() != null)
+			exception = exception.getCause();
+		return exception;
+	}
 
-			final Request trackingRequest = new Request.Builder()
-					.url(URL_TRACKING)
-					.addHeader("accept", "*/*")
-					.addHeader("accept-language", "ru-RU,ru;q=0.8,en-US;q=0.5,en;q=0.3")
-					.addHeader("sec-fetch-dest", "document")
-					.addHeader("sec-fetch-mode", "navigate")
-					.addHeader("sec-fetch-site", "none")
-					.addHeader("sec-fetch-user", "?1")
-					.addHeader("upgrade-insecure-requests", "1")
-					.addHeader("user-agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/85.0.4183.121 Safari/537.36")
-					.post(trackingPostData)
-					.build();
+	/**
+	 * Отправляет запрос данных о нескольких отправлениях, не дожидаясь ответа.
+	 * @param trackingCodes Коды отслеживания отправлений
+	 * @return Future с ответом сервера
+	 */
+	private CompletableFuture<Response> call(List<String> trackingCodes) {
+		final CompletableFuture<Response> future = new CompletableFuture<>();
+		final Stats.Span span = Stats.start(Stage.FETCH, trackingCodes);
+
+		try {
+			httpClient.newCall(newTrackingRequest(trackingCodes)).enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException exception) {
+					span.end();
+					future.completeExceptionally(exception);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) {
+					span.end();
+					future.complete(response);
+				}
+			});
+		} catch (RuntimeException exception) {
+			span.end();
+			future.completeExceptionally(exception);
+		}
+
+		return future;
+	}
 
-			trackingResponse = httpClient.newCall(trackingRequest).execute();
+	/**
+	 * Раскладывает ответ сервера по кодам отслеживания и закрывает его.
+	 * Тело ответа разбирается потоково, см. {@link TrackingRecord}.
+	 * @param trackingCodes Запрошенные коды отслеживания
+	 * @param trackingResponse Ответ сервера
+	 */
+	private void readResponse(List<String> trackingCodes, Response trackingResponse) {
+		try {
 			if (!trackingResponse.isSuccessful())
 				throw new RuntimeException("!trackingResponse.isSuccessful()");
 
-			json = trackingResponse.body().string();
-			final JSONObject jTracking = new JSONObject(json)
-					.optJSONArray("response")
-					.optJSONObject(0);
-			final JSONArray jTrackingHistory = jTracking.optJSONObject("trackingItem")
-					.optJSONArray("trackingHistoryItemList");
-			final JSONObject jForm22 = jTracking.optJSONObject("formF22Params");
-			final JSONObject jPostOffice = jTracking.optJSONObject("officeSummary");
-
-			// Определить статус отправления по истории отслеживания
-			if (jTrackingHistory.isEmpty()) {
-				Logger.track(trackingCode, "Сервер не вернул историю отслеживания!");
-				return apiData;
-			} else if (!isReadyForPickup(jTrackingHistory)) {
-				Logger.track(trackingCode, "Отправление еще не прибыло в место вручения!");
-				return apiData;
-			}
-
-			// В некоторых случаях сервер Почты России не включает в JSON объект formF22Params
-			if (jForm22 == null) {
-				Logger.track(trackingCode, "Сервер не вернул данные об отправлении!");
-				return apiData;
+			final List<TrackingRecord> records;
+			final Stats.Span span = Stats.start(Stage.PARSE, trackingCodes);
+			try (Reader reader = trackingResponse.body().charStream()) {
+				records = TrackingRecord.readResponse(reader, recorder != null);
+			} finally {
+				span.end();
 			}
 
-			apiData.put("Откуда", jForm22.optString("senderAddress"));
-			apiData.put("Вид и категория", String.join(", ",
-					jForm22.optString("MailTypeText"),
-					jForm22.optString("MailCtgText")));
-			apiData.put("С уведомлением", jForm22.optString("postmarkText")); // Код отслеживания: 41654063044609
-			apiData.put("Срок хранения", TextUtils.formatDate(jForm22.optLong("endStorageDate", 0)));
-			apiData.put("Разряд", jForm22.optString("MailRankText"));
-			apiData.put("Масса", TextUtils.formatWeight(jForm22.optInt("WeightGr")));
-			apiData.put("Объявленная ценность", TextUtils.formatCurrency(jForm22.optDouble("SummInsured", 0)));
-			apiData.put("Наложенный платеж", TextUtils.formatCurrency(jForm22.optDouble("SummCashOnDelivery", 0)));
-			apiData.put("Плата за возврат", TextUtils.formatCurrency(jForm22.optDouble("ReturningRate", 0))); // TODO а точно ли это ReturningRate?
-			apiData.put("Плата за досыл", ""); // TODO Найти образцы с платой за досыл
-			apiData.put("Таможенная пошлина", TextUtils.formatCurrency(jForm22.optDouble("CustomDuty", 0)));
-
-			// Для некоторых отправлений отсутствует информация о почтовом отделении
-			if (jPostOffice == null) {
-				Logger.track(trackingCode, "Сервер не вернул данные о почтовом отделении!");
-				return apiData;
+			for (int i = 0; i < records.size(); i++) {
+				final TrackingRecord record = records.get(i);
+				if (record == null)
+					continue;
+
+				// Элемент ответа относится к коду из его trackingItem. Если сервер код
+				// не указал, используется порядок кодов в запросе
+				String trackingCode = findTrackingCode(trackingCodes, record.getBarcode());
+				if (trackingCode.isEmpty() && records.size() == trackingCodes.size())
+					trackingCode = trackingCodes.get(i);
+				if (trackingCode.isEmpty())
+					continue;
+
+				if (recorder != null)
+					recorder.saveTracking(trackingCode, record.getJson());
+
+				historyHashes.put(trackingCode, record.getHistoryHash());
+				if (record.isReadyForPickup())
+					readyCodes.add(trackingCode);
+
+				try {
+					final HashMap<String, String> apiData = parseApiData(trackingCode, record);
+					fetchedApiData.put(trackingCode, apiData);
+
+					// Кэшируются только полные данные: отправление, которое ещё не прибыло
+					// в место вручения, при следующем запуске нужно запросить снова
+					if (!apiData.equals(defaultApiData()))
+						apiDataCache.put(trackingCode, apiData);
+				} catch (Exception exception) {
+					// Сервер ответил, но данные не удалось разобрать: повторный запрос не поможет
+					Logger.error("Ошибка при обработке данных!", exception);
+					fetchedApiData.put(trackingCode, staleApiData(trackingCode));
+				}
 			}
-
-			final JSONArray jPostOfficeSchedule = jPostOffice.optJSONArray("workingSchedule");
-			final JSONArray jPostOfficePhones = jPostOffice.optJSONArray("phones");
-
-			apiData.put("Получатель.Адрес.Выдача", formatPostOfficeAddress(
-					jPostOffice.optString("addressSource"),
-					jPostOfficeSchedule,
-					jPostOfficePhones));
-			apiData.put("Вызов курьера", jPostOfficePhones.optString(0));
 		} catch (Exception exception) {
 			Logger.error("Ошибка при обработке данных!", exception);
-			Logger.error(json);
 		} finally {
 			IoUtils.closeResponse(trackingResponse);
 		}
+	}
+
+	/**
+	 * Создаёт запрос данных о нескольких отправлениях.
+	 * @param trackingCodes Коды отслеживания отправлений
+	 * @return Запрос к серверу Почты России
+	 */
+	private Request newTrackingRequest(List<String> trackingCodes) {
+		final RequestBody trackingPostData = new MultipartBody.Builder()
+				.setType(MultipartBody.FORM)
+				.addFormDataPart("barcodes", String.join(Constants.API_BATCH_SEPARATOR, trackingCodes))
+				.build();
+
+		return new Request.Builder()
+				.url(trackingUrl)
+				.addHeader("accept", "*/*")
+				.addHeader("accept-language", "ru-RU,ru;q=0.8,en-US;q=0.5,en;q=0.3")
+				.addHeader("sec-fetch-dest", "document")
+				.addHeader("sec-fetch-mode", "navigate")
+				.addHeader("sec-fetch-site", "none")
+				.addHeader("sec-fetch-user", "?1")
+				.addHeader("upgrade-insecure-requests", "1")
+				.addHeader("user-agent", config.getUserAgent())
+				.post(trackingPostData)
+				.build();
+	}
+
+	/**
+	 * Проверяет, отклонил ли сервер запрос из-за недействительной сессии или ссылки.
+	 * @param response Ответ сервера
+	 * @return true, если сессию следует инициализировать заново
+	 */
+	private static boolean isRejected(Response response) {
+		return response.code() == 401 || response.code() == 403 || response.code() == 404;
+	}
+
+	/**
+	 * Заново инициализирует сессию, если использовалась сохранённая или если
+	 * с последней инициализации прошло не менее {@link Constants#SESSION_REFRESH_MIN_INTERVAL_MINUTES}:
+	 * при долгой работе программы (--watch, --serve) сессия может истечь на сервере.
+	 * Только что полученную сессию сервер отклонять не должен, поэтому такая
+	 * сессия заново не инициализируется.
+	 *
+	 * В отличие от первичной инициализации, ошибка не включает оффлайн-режим:
+	 * запросы, отклонённые до следующей попытки, считаются неудачными, а попытка
+	 * повторяется через тот же интервал, поэтому кратковременный сбой сети
+	 * не прекращает загрузку данных до конца работы программы.
+	 * @return true, если сессия инициализирована заново и запрос стоит повторить
+	 */
+	private synchronized boolean refreshSession() {
+		if (System.currentTimeMillis() - sessionInitializedAt <
+				TimeUnit.MINUTES.toMillis(Constants.SESSION_REFRESH_MIN_INTERVAL_MINUTES))
+			return false;
+
+		Logger.verbose("[PochtaDataFetcher] Сервер отклонил сессию");
+		session.clear();
+		try {
+			getCookies();
+			return true;
+		} catch (IOException exception) {
+			Logger.error(String.format("Ошибка при повторной инициализации! Следующая попытка не раньше чем через %d мин.",
+					Constants.SESSION_REFRESH_MIN_INTERVAL_MINUTES), exception);
+			return false;
+		}
+	}
+
+	/**
+	 * Извлекает данные для заполнения шаблона из элемента ответа сервера.
+	 * @param trackingCode Код отслеживания отправления
+	 * @param record Элемент массива response
+	 * @return Коллекция с данными для замены в шаблоне извещения
+	 */
+	private HashMap<String, String> parseApiData(String trackingCode, TrackingRecord record) {
+		final HashMap<String, String> apiData = defaultApiData();
+
+		// Определить статус отправления по истории отслеживания
+		if (record.isHistoryEmpty()) {
+			Logger.track(trackingCode, "Сервер не вернул историю отслеживания!");
+			return apiData;
+		} else if (!record.isReadyForPickup()) {
+			Logger.track(trackingCode, "Отправление еще не прибыло в место вручения!");
+			return apiData;
+		}
+
+		// В некоторых случаях сервер Почты России не включает в JSON объект formF22Params
+		if (!record.hasFormF22()) {
+			Logger.track(trackingCode, "Сервер не вернул данные об отправлении!");
+			return apiData;
+		}
+
+		apiData.put("Откуда", record.getFormF22String("senderAddress"));
+		apiData.put("Вид и категория", String.join(", ",
+				record.getFormF22String("MailTypeText"),
+				record.getFormF22String("MailCtgText")));
+		apiData.put("С уведомлением", record.getFormF22String("postmarkText")); // Код отслеживания: 41654063044609
+		apiData.put("Срок хранения", TextUtils.formatDate((long) record.getFormF22Number("endStorageDate")));
+		apiData.put("Разряд", record.getFormF22String("MailRankText"));
+		apiData.put("Масса", TextUtils.formatWeight((int) record.getFormF22Number("WeightGr")));
+		apiData.put("Объявленная ценность", TextUtils.formatCurrency(record.getFormF22Number("SummInsured")));
+		apiData.put("Наложенный платеж", TextUtils.formatCurrency(record.getFormF22Number("SummCashOnDelivery")));
+		apiData.put("Плата за возврат", TextUtils.formatCurrency(record.getFormF22Number("ReturningRate"))); // TODO а точно ли это ReturningRate?
+		apiData.put("Плата за досыл", ""); // TODO Найти образцы с платой за досыл
+		apiData.put("Таможенная пошлина", TextUtils.formatCurrency(record.getFormF22Number("CustomDuty")));
+
+		// Для некоторых отправлений отсутствует информация о почтовом отделении
+		if (!record.hasPostOffice()) {
+			Logger.track(trackingCode, "Сервер не вернул данные о почтовом отделении!");
+			return apiData;
+		}
+
+		final List<String> phones = record.getPostOfficePhones();
+		apiData.put("Получатель.Адрес.Выдача", formatPostOfficeAddress(
+				record.getPostOfficeAddress(),
+				record.getPostOfficeSchedule(),
+				phones));
+		apiData.put("Вызов курьера", phones.isEmpty() ? "" : phones.get(0));
 
 		return apiData;
 	}
 
 	/**
-	 * Проверяет готовность отправления к вручению.
-	 * @param history Массив с элементами истории отслеживания отправления
-	 * @return флаг готовности отправления к вручению
+	 * Возвращает коллекцию данных об отправлении, заполненную значениями по-умолчанию.
+	 * @return Коллекция с данными для замены в шаблоне извещения
+	 */
+	private static HashMap<String, String> defaultApiData() {
+		return TextUtils.initHashMap("",
+				"Откуда", "Вид и категория", "С уведомлением", "Срок хранения", "Разряд",
+				"Масса", "Объявленная ценность", "Наложенный платеж", "Плата за возврат",
+				"Плата за досыл", "Таможенная пошлина", "Получатель.Адрес.Выдача", "Вызов курьера");
+	}
+
+	/**
+	 * Возвращает данные об отправлении из кэша независимо от срока их актуальности.
+	 * Используется, когда данные не удалось получить от сервера; код при этом
+	 * попадает в отчёт, выводимый при завершении работы.
+	 * @param trackingCode Код отслеживания отправления
+	 * @return Коллекция с данными из кэша или значениями по-умолчанию
 	 */
-	private boolean isReadyForPickup(JSONArray history) {
-		for (int i = 0; i < history.length(); i++) {
-			JSONObject jEntry = history.getJSONObject(i);
-			if (jEntry.optInt("operationType") == Constants.POST_ARRIVED_TYPE &&
-					jEntry.optInt("operationAttr") == Constants.POST_ARRIVED_ATTR)
-				return true;
+	private HashMap<String, String> staleApiData(String trackingCode) {
+		degradedCodes.add(trackingCode);
+
+		final HashMap<String, String> cached = apiDataCache.getStale(trackingCode);
+		if (cached == null) {
+			Logger.track(trackingCode, "Данные об отправлении не получены, поля останутся пустыми!");
+			return defaultApiData();
 		}
 
-		return false;
+		Logger.track(trackingCode, "Использую устаревшие данные об отправлении из кэша");
+		return cached;
+	}
+
+	/**
+	 * Ищет среди запрошенных кодов отслеживания код, указанный сервером.
+	 * Сервер может вернуть код в другом регистре или без пробелов.
+	 * @param trackingCodes Запрошенные коды отслеживания
+	 * @param barcode Код отслеживания из ответа сервера
+	 * @return Запрошенный код отслеживания или пустая строка, если код не найден
+	 */
+	private static String findTrackingCode(List<String> trackingCodes, String barcode) {
+		final String normalized = barcode.replace(" ", "");
+		for (String trackingCode : trackingCodes)
+			if (trackingCode.replace(" ", "").equalsIgnoreCase(normalized))
+				return trackingCode;
+		return "";
 	}
 
 	/**
 	 * Форматирует адрес отделения Почты России,
 	 * в котором получателя ожидает отправление.
 	 * @param addressSource Первая строка
-	 * @param arrays Массивы строк
+	 * @param lists Списки строк
 	 * @return Отформатированная строка для замены в шаблоне извещения
 	 */
-	private String formatPostOfficeAddress(String addressSource, JSONArray... arrays) {
+	@SafeVarargs
+	private final String formatPostOfficeAddress(String addressSource, List<String>... lists) {
 		final StringBuilder postOfficeAddress = new StringBuilder();
 		postOfficeAddress.append(TextUtils.paragraph(addressSource));
 
-		for (JSONArray array : arrays)
-			IntStream.range(0, array.length())
-					.mapToObj(array::optString)
+		for (List<String> list : lists)
+			list.stream()
 					.map(TextUtils::paragraph)
 					.forEachOrdered(postOfficeAddress::append);
 
@@ -0,0 +1,191 @@
+package dev.kerastinell.pochtaizv;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Сессия работы с сервером Почты России: cookies и ссылка для отслеживания
+ * отправлений, извлечённая при инициализации.
+ *
+ * Сессия сохраняется в файл между запусками программы, что позволяет не
+ * загружать страницу отслеживания при каждом запуске. Сохранённая сессия
+ * считается действительной в течение заданного срока; cookies без срока
+ * действия при этом живут не дольше самой сессии.
+ */
+public class SessionStore implements CookieJar {
+	private static final int MAGIC = 0x50495a53; // PIZS
+	private static final int VERSION = 1;
+
+	private final long maxAgeMillis;
+	private Path file; // Если не задан, сессия не сохраняется
+
+	private final ArrayList<Cookie> cookies;
+	private String trackingUrl;
+	private long createdAt; // Время инициализации сессии
+	private boolean modified;
+
+	/**
+	 * @param maxAgeMillis Срок действия сессии в миллисекундах
+	 */
+	public SessionStore(long maxAgeMillis) {
+		this.maxAgeMillis = maxAgeMillis;
+		cookies = new ArrayList<>();
+	}
+
+	/**
+	 * Загружает сессию из файла, в который она затем будет сохранена.
+	 * Если файл не существует или повреждён, сессия будет пустой.
+	 * @param file Путь к файлу сессии
+	 */
+	public synchronized void load(Path file) {
+		this.file = file;
+		clear();
+		modified = false;
+		if (!Files.exists(file))
+			return;
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION)
+				return;
+
+			createdAt = input.readLong();
+			trackingUrl = input.readUTF();
+
+			final int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				final Cookie.Builder builder = new Cookie.Builder()
+						.name(input.readUTF())
+						.value(input.readUTF())
+						.expiresAt(input.readLong())
+						.path(input.readUTF());
+
+				final String domain = input.readUTF();
+				final int flags = input.readByte();
+				if ((flags & 1) != 0)
+					builder.hostOnlyDomain(domain);
+				else builder.domain(domain);
+				if ((flags & 2) != 0)
+					builder.secure();
+				if ((flags & 4) != 0)
+					builder.httpOnly();
+
+				cookies.add(builder.build());
+			}
+		} catch (IOException | RuntimeException exception) {
+			Logger.error("Ошибка при чтении сохранённой сессии!", exception);
+			clear();
+		}
+	}
+
+	/**
+	 * Возвращает ссылку для отслеживания отправлений, если сессия действительна.
+	 * @return Ссылка или null, если сессия не инициализирована или устарела
+	 */
+	public synchronized String getTrackingUrl() {
+		if (trackingUrl == null || trackingUrl.isEmpty() ||
+				System.currentTimeMillis() - createdAt > maxAgeMillis)
+			return null;
+		return trackingUrl;
+	}
+
+	/**
+	 * Запоминает ссылку для отслеживания отправлений после инициализации сессии.
+	 * @param trackingUrl Ссылка для отслеживания отправлений
+	 */
+	public synchronized void setTrackingUrl(String trackingUrl) {
+		this.trackingUrl = trackingUrl;
+		createdAt = System.currentTimeMillis();
+		modified = true;
+	}
+
+	/**
+	 * Забывает ссылку и все cookies, например если сервер отклонил сессию.
+	 */
+	public synchronized void clear() {
+		trackingUrl = null;
+		createdAt = 0;
+		cookies.clear();
+		modified = true;
+	}
+
+	@Override
+	public synchronized void saveFromResponse(HttpUrl url, List<Cookie> received) {
+		// Новые cookies заменяют прежние с тем же именем, доменом и путём
+		for (Cookie cookie : received) {
+			cookies.removeIf(saved -> saved.name().equals(cookie.name()) &&
+					saved.domain().equals(cookie.domain()) &&
+					saved.path().equals(cookie.path()));
+			cookies.add(cookie);
+		}
+		modified = true;
+	}
+
+	@Override
+	public synchronized List<Cookie> loadForRequest(HttpUrl url) {
+		final long now = System.currentTimeMillis();
+		final ArrayList<Cookie> result = new ArrayList<>();
+
+		final Iterator<Cookie> iterator = cookies.iterator();
+		while (iterator.hasNext()) {
+			final Cookie cookie = iterator.next();
+			if (cookie.expiresAt() < now) {
+				iterator.remove();
+				modified = true;
+			} else if (cookie.matches(url))
+				result.add(cookie);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Записывает сессию в файл, если она изменилась.
+	 */
+	public synchronized void save() {
+		if (file == null || !modified)
+			return;
+
+		Path temporary = null;
+		try {
+			final Path directory = Files.createDirectories(file.toAbsolutePath().getParent());
+			// Сессию могут одновременно сохранять несколько генераторов,
+			// поэтому общий временный файл не используется
+			temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeLong(createdAt);
+				output.writeUTF(trackingUrl == null ? "" : trackingUrl);
+
+				output.writeInt(cookies.size());
+				for (Cookie cookie : cookies) {
+					output.writeUTF(cookie.name());
+					output.writeUTF(cookie.value());
+					// Cookies без срока действия живут столько же, сколько сессия
+					output.writeLong(cookie.persistent() ? cookie.expiresAt() : Math.min(cookie.expiresAt(), createdAt + maxAgeMillis));
+					output.writeUTF(cookie.path());
+					output.writeUTF(cookie.domain());
+					output.writeByte((cookie.hostOnly() ? 1 : 0) | (cookie.secure() ? 2 : 0) | (cookie.httpOnly() ? 4 : 0));
+				}
+			}
+
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			modified = false;
+		} catch (IOException exception) {
+			Logger.error("Ошибка при сохранении сессии!", exception);
+			IoUtils.deleteQuietly(temporary);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package dev.kerastinell.pochtaizv;
+
+import dev.kerastinell.pochtaizv.util.json.JsonReader;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Данные об одном отправлении из ответа сервера Почты России, нужные для
+ * заполнения извещения.
+ *
+ * Ответ разбирается потоково: из каждого элемента массива response берутся
+ * только код отслеживания, признак прибытия в место вручения, нужные поля
+ * formF22Params и officeSummary, всё остальное пропускается. История
+ * отслеживания просматривается до первого события прибытия.
+ */
+public class TrackingRecord {
+	// Поля formF22Params, используемые в извещении
+	private static final Set<String> FORM_F22_FIELDS = new HashSet<>(Arrays.asList(
+			"senderAddress", "MailTypeText", "MailCtgText", "postmarkText", "endStorageDate", "MailRankText",
+			"WeightGr", "SummInsured", "SummCashOnDelivery", "ReturningRate", "CustomDuty"));
+	// Поля элемента истории отслеживания, по которым определяется прибытие в место вручения
+	private static final Set<String> HISTORY_FIELDS = new HashSet<>(Arrays.asList(
+			"operationType", "operationAttr"));
+
+	private String barcode = "";
+	private boolean historyEmpty = true;
+	private boolean readyForPickup;
+	private int historyHash = 1; // Хэш событий истории до прибытия включительно
+
+	private Map<String, String> formF22; // null, если сервер не вернул formF22Params
+	private boolean hasPostOffice;
+	private String postOfficeAddress = "";
+	private final ArrayList<String> postOfficeSchedule = new ArrayList<>();
+	private final ArrayList<String> postOfficePhones = new ArrayList<>();
+
+	private String json; // Исходный текст элемента, если он сохраняется
+
+	/**
+	 * Разбирает ответ сервера. Чтение прекращается сразу после массива response.
+	 * @param reader Поток с телом ответа
+	 * @return Элементы массива response по порядку; null на месте элементов, не являющихся объектами
+	 */
+	public static List<TrackingRecord> readResponse(Reader reader) throws IOException {
+		return readResponse(reader, false);
+	}
+
+	/**
+	 * Разбирает ответ сервера, при необходимости сохраняя исходный текст
+	 * каждого элемента (например, для записи в fixture-файлы).
+	 * @see #readResponse(Reader)
+	 * @param reader Поток с телом ответа
+	 * @param keepJson Сохранять исходный текст элементов, см. {@link #getJson()}
+	 * @return Элементы массива response по порядку; null на месте элементов, не являющихся объектами
+	 */
+	public static List<TrackingRecord> readResponse(Reader reader, boolean keepJson) throws IOException {
+		final JsonReader json = new JsonReader(reader);
+		final ArrayList<TrackingRecord> records = new ArrayList<>();
+
+		json.beginObject();
+		while (json.hasNext()) {
+			if (!json.nextName().equals("response") || json.peek() != JsonReader.Token.BEGIN_ARRAY) {
+				json.skipValue();
+				continue;
+			}
+
+			json.beginArray();
+			while (json.hasNext()) {
+				if (json.peek() == JsonReader.Token.BEGIN_OBJECT) {
+					if (keepJson)
+						json.beginCapture();
+					final TrackingRecord record = read(json);
+					if (keepJson)
+						record.json = json.endCapture();
+					records.add(record);
+				} else {
+					json.skipValue();
+					records.add(null);
+				}
+			}
+			break;
+		}
+
+		return records;
+	}
+
+	private static TrackingRecord read(JsonReader json) throws IOException {
+		final TrackingRecord record = new TrackingRecord();
+
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+			final boolean isObject = json.peek() == JsonReader.Token.BEGIN_OBJECT;
+
+			if (name.equals("trackingItem") && isObject)
+				record.readTrackingItem(json);
+			else if (name.equals("formF22Params") && isObject)
+				record.formF22 = readFields(json, FORM_F22_FIELDS);
+			else if (name.equals("officeSummary") && isObject)
+				record.readPostOffice(json);
+			else json.skipValue();
+		}
+		json.endObject();
+
+		return record;
+	}
+
+	private void readTrackingItem(JsonReader json) throws IOException {
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+			if (name.equals("barcode") && isScalar(json.peek()))
+				barcode = orEmpty(json.nextString());
+			else if (name.equals("trackingHistoryItemList") && json.peek() == JsonReader.Token.BEGIN_ARRAY)
+				readHistory(json);
+			else json.skipValue();
+		}
+		json.endObject();
+	}
+
+	private void readHistory(JsonReader json) throws IOException {
+		json.beginArray();
+		while (json.hasNext()) {
+			historyEmpty = false;
+
+			// После события прибытия остальная история не нужна
+			if (readyForPickup || json.peek() != JsonReader.Token.BEGIN_OBJECT) {
+				json.skipValue();
+				continue;
+			}
+
+			final Map<String, String> entry = readFields(json, HISTORY_FIELDS);
+			historyHash = 31 * historyHash + entry.hashCode();
+			readyForPickup = parseInt(entry.get("operationType")) == Constants.POST_ARRIVED_TYPE &&
+					parseInt(entry.get("operationAttr")) == Constants.POST_ARRIVED_ATTR;
+		}
+		json.endArray();
+	}
+
+	private void readPostOffice(JsonReader json) throws IOException {
+		hasPostOffice = true;
+
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+			final JsonReader.Token token = json.peek();
+			if (name.equals("addressSource") && isScalar(token))
+				postOfficeAddress = orEmpty(json.nextString());
+			else if (name.equals("workingSchedule") && token == JsonReader.Token.BEGIN_ARRAY)
+				readStrings(json, postOfficeSchedule);
+			else if (name.equals("phones") && token == JsonReader.Token.BEGIN_ARRAY)
+				readStrings(json, postOfficePhones);
+			else json.skipValue();
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Считывает из объекта простые значения указанных полей, остальные пропускает.
+	 */
+	private static Map<String, String> readFields(JsonReader json, Set<String> fields) throws IOException {
+		final HashMap<String, String> values = new HashMap<>();
+
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+			if (fields.contains(name) && isScalar(json.peek())) {
+				final String value = json.nextString();
+				if (value != null)
+					values.put(name, value);
+			} else json.skipValue();
+		}
+		json.endObject();
+
+		return values;
+	}
+
+	private static void readStrings(JsonReader json, List<String> strings) throws IOException {
+		json.beginArray();
+		while (json.hasNext()) {
+			if (isScalar(json.peek()))
+				strings.add(orEmpty(json.nextString()));
+			else json.skipValue();
+		}
+		json.endArray();
+	}
+
+	private static boolean isScalar(JsonReader.Token token) {
+		return token == JsonReader.Token.STRING || token == JsonReader.Token.NUMBER ||
+				token == JsonReader.Token.BOOLEAN || token == JsonReader.Token.NULL;
+	}
+
+	private static String orEmpty(String value) {
+		return value == null ? "" : value;
+	}
+
+	private static int parseInt(String value) {
+		return (int) parseDouble(value, 0);
+	}
+
+	private static double parseDouble(String value, double defaultValue) {
+		if (value == null)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException exception) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return Исходный текст элемента или null, если он не сохранялся
+	 */
+	public String getJson() {
+		return json;
+	}
+
+	public String getBarcode() {
+		return barcode;
+	}
+
+	public boolean isHistoryEmpty() {
+		return historyEmpty;
+	}
+
+	public boolean isReadyForPickup() {
+		return readyForPickup;
+	}
+
+	/**
+	 * Возвращает хэш истории отслеживания, который изменяется с каждым новым
+	 * событием до прибытия в место вручения.
+	 * @return Хэш истории отслеживания
+	 */
+	public int getHistoryHash() {
+		return historyHash;
+	}
+
+	public boolean hasFormF22() {
+		return formF22 != null;
+	}
+
+	/**
+	 * @param field Поле formF22Params
+	 * @return Значение поля или пустая строка, если поле отсутствует
+	 */
+	public String getFormF22String(String field) {
+		return formF22 == null ? "" : formF22.getOrDefault(field, "");
+	}
+
+	/**
+	 * @param field Поле formF22Params
+	 * @return Числовое значение поля или 0, если поле отсутствует или не является числом
+	 */
+	public double getFormF22Number(String field) {
+		return formF22 == null ? 0 : parseDouble(formF22.get(field), 0);
+	}
+
+	public boolean hasPostOffice() {
+		return hasPostOffice;
+	}
+
+	public String getPostOfficeAddress() {
+		return postOfficeAddress;
+	}
+
+	public List<String> getPostOfficeSchedule() {
+		return postOfficeSchedule;
+	}
+
+	public List<String> getPostOfficePhones() {
+		return postOfficePhones;
+	}
+}
@@ -1,17 +1,17 @@
 package dev.kerastinell.pochtaizv.job;
 
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.stats.Stage;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
+import dev.kerastinell.pochtaizv.template.Notice;
+import dev.kerastinell.pochtaizv.template.TemplateBundle;
 import dev.kerastinell.pochtaizv.util.Logger;
-import dev.kerastinell.pochtaizv.util.TextUtils;
-import dev.kerastinell.pochtaizv.util.io.IoUtils;
-import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Абстрактная реализация задачи заполнения извещения.
@@ -50,17 +50,31 @@ public abstract class AbstractJob implements Runnable {
 	};
 
 	protected final String trackingCode;
-	private HashMap<String, String> templateData;
-	private InputStream barcodeImage;
+	// Форматы документа и изображения штрихкода
+	protected final DocumentFormat format;
+	protected final BarcodeFormat barcodeFormat;
 
 	private final File outputFile;
-	private ZipOutputStream output;
 
 	protected AbstractJob(String trackingCode) {
+		this(trackingCode, GlobalOptions.FORMAT, GlobalOptions.BARCODE_FORMAT);
+	}
+
+	protected AbstractJob(String trackingCode, DocumentFormat format, BarcodeFormat barcodeFormat) {
 		this.trackingCode = trackingCode;
+		this.format = format;
+		this.barcodeFormat = barcodeFormat;
 		outputFile = new File(getFileName());
 	}
 
+	/**
+	 * Возвращает код отслеживания отправления.
+	 * @return Код отслеживания. Пустая строка, если код не указан
+	 */
+	public String getTrackingCode() {
+		return trackingCode;
+	}
+
 	/**
 	 * Возвращает имя выходного файла.
 	 * @return Имя выходного файла.
@@ -74,103 +88,52 @@ public abstract class AbstractJob implements Runnable {
 	protected abstract HashMap<String, String> getTemplateData();
 
 	/**
-	 * Возвращает поток с изображением штрихкода кода отслеживания отправления.
-	 * @return Поток с изображением штрихкода
+	 * Возвращает изображение штрихкода кода отслеживания отправления.
+	 * @return Содержимое PNG-файла с изображением штрихкода
 	 */
-	protected abstract InputStream getBarcodeImage();
+	protected abstract byte[] getBarcodeImage();
 
 	/**
-	 * Запускает основную логику задачи. Получает данные от классов-наследников,
-	 * открывает выходной файл для записи и начинает по-одному обрабатывать файлы шаблона.
+	 * Получает от классов-наследников данные извещения.
+	 * @return Данные извещения, подготовленные для записи в документ
 	 */
-	@Override
-	public void run() {
-		try {
-			if (Constants.TEMPLATE_DIR_PATH == null) {
-				Logger.error("Сохранение невозможно!", new NullPointerException("templateDirPath == null"));
-				return;
-			}
+	public Notice prepare() {
+		final HashMap<String, String> templateData = getTemplateData();
 
-			// Подготовка данных
-			templateData = getTemplateData();
+		final Stats.Span span = Stats.start(Stage.BARCODE, trackingCode);
+		final byte[] barcodeImage;
+		try {
 			barcodeImage = getBarcodeImage();
-
-			// Создает .odg файл и открывает поток для записи данных
-			output = new ZipOutputStream(new FileOutputStream(outputFile));
-
-			// Проходит по внутренней директории шаблона и направляет
-			// каждый файл на обработку в processTemplateFile
-			Files.walk(Constants.TEMPLATE_DIR_PATH)
-					.filter(Files::isRegularFile)
-					.forEachOrdered(this::processTemplateFile);
-			Logger.track(trackingCode, "Сохранено в файл " + outputFile.getAbsolutePath());
-		} catch (IOException exception) {
-			Logger.error("Ошибка при записи файла!", exception);
 		} finally {
-			IoUtils.closeOutputStream(output);
+			span.end();
 		}
+
+		return new Notice(trackingCode, templateData, barcodeImage, barcodeFormat);
 	}
 
 	/**
-	 * Обрабатывает файл шаблона извещения.
-	 * @param path Путь к файлу
+	 * Подготавливает данные извещения и записывает их в отдельный выходной файл.
+	 * @throws IOException Если файл не удалось записать
 	 */
-	private void processTemplateFile(Path path) {
-		final String pathInZip = Constants.TEMPLATE_DIR_PATH
-				.relativize(path).toString()
-				// Когда программа запущена из среды разработки,
-				// используется системный разделитель директорий,
-				// из-за чего в Windows сгенерированные извещения не
-				// открываются в LibreOffice без функции восстановления
-				.replace("\\", "/");
-		InputStream data;
-
-		// Все файлы просто копируются в выходной файл за исключением двух:
-		//    1. content.xml - сюда подставляются данные пользователя
-		//    2. *.png - заменяется на сгенерированный штрихкод
-		try {
-			if (pathInZip.endsWith(Constants.TEMPLATE_XML_FILE)) {
-				// Загрузить содержимое шаблона из файла в строку
-				String template = IoUtils.readString(IoUtils.open(path));
-
-				// Отправить в fillTemplate на заполнение
-				template = fillTemplate(template);
-
-				// Преобразовать в поток
-				data = new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8));
-			} else if (pathInZip.endsWith(Constants.TEMPLATE_BARCODE_FILE) && barcodeImage != null) {
-				data = barcodeImage; // если наследующий класс вернул null вместо ожидаемого потока, то замена не произойдёт
-			} else data = IoUtils.open(path);
-
-			output.putNextEntry(new ZipEntry(pathInZip));
-			IoUtils.transfer(data, output);
-			output.closeEntry();
-		} catch (IOException exception) {
-			Logger.error("Ошибка при работе с выходным файлом!", exception);
-		}
+	public void write() throws IOException {
+		final TemplateBundle template = TemplateBundle.getInstance();
+		final Notice notice = prepare();
+
+		// Создает файл документа и записывает в него извещение
+		format.getWriter(template)
+				.write(Collections.singletonList(notice), new FileOutputStream(outputFile));
+		Logger.track(trackingCode, Stage.WRITE, "Сохранено в файл " + outputFile.getAbsolutePath());
 	}
 
 	/**
-	 * Заполняет шаблон методом замены строк в содержимом файла content.xml.
-	 * @param source Строка-содержимое файла content.xml
-	 * @return Содержимое заполненного извещения
+	 * Запускает основную логику задачи, см. {@link #write()}.
 	 */
-	private String fillTemplate(String source) {
-		Logger.track(trackingCode, "Заполнение шаблона");
-
-		// Адрес выдачи заполняется иначе, потому что заполняемое поле
-		// состоит из нескольких строк (для LibreOffice - абзацев)
-		source = source.replace(
-				TextUtils.paragraph("${Получатель.Адрес.Выдача}"),
-				templateData.remove("Получатель.Адрес.Выдача")
-		);
-
-		// Замена всех оставшихся значений
-		for (String key : templateData.keySet()) {
-			String value = templateData.get(key);
-			source = source.replace("${" + key + "}", value);
+	@Override
+	public void run() {
+		try {
+			write();
+		} catch (IOException exception) {
+			Logger.error("Ошибка при записи файла!", exception);
 		}
-
-		return source;
 	}
 }
@@ -0,0 +1,119 @@
+package dev.kerastinell.pochtaizv.job;
+
+import dev.kerastinell.pochtaizv.util.FormDate;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.TextUtils;
+import dev.kerastinell.pochtaizv.util.json.JsonReader;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.IOException;
+import java.util.*;
+
+import static dev.kerastinell.pochtaizv.util.TextUtils.is;
+
+/**
+ * Неизменяемые данные извещений одного получателя: коды отслеживания, данные
+ * получателя и даты. Поля называются так же, как параметры командной строки
+ * (tracks, name, gen-date...), и считываются из запросов к серверу --serve,
+ * записей файла --batch или задаются построителем {@link Builder}.
+ */
+public final class FormRecord {
+	private final List<String> trackingCodes;
+	private final Map<String, String> formData;
+
+	private FormRecord(Builder builder) {
+		trackingCodes = Collections.unmodifiableList(new ArrayList<>(builder.trackingCodes));
+		formData = Collections.unmodifiableMap(new HashMap<>(builder.formData));
+	}
+
+	/**
+	 * Проверяет, есть ли поле с таким именем.
+	 * @param name Имя поля
+	 * @return true, если поле распознаётся {@link Builder#put(String, String)}
+	 */
+	public static boolean isField(String name) {
+		if (is(name, "track", "tracks", "gen-date", "id-issue-date", "pickup-date"))
+			return true;
+		for (String[] udp : Constants.USER_DEFINED_PARAMETERS)
+			if (is(name, udp[0]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return Коды отслеживания в порядке их указания
+	 */
+	public List<String> getTrackingCodes() {
+		return trackingCodes;
+	}
+
+	/**
+	 * Возвращает данные для заполнения извещений: данные по-умолчанию,
+	 * дополненные данными записи. Не указанные даты генерации извещения
+	 * и получения отправления заменяются текущей датой.
+	 * @param initialFormData Данные по-умолчанию, например указанные в параметрах командной строки
+	 * @return Данные для заполнения извещений
+	 */
+	public Map<String, String> getFormData(Map<String, String> initialFormData) {
+		final HashMap<String, String> result = new HashMap<>(initialFormData);
+		result.putAll(formData);
+
+		if (!result.containsKey("Дата.Генерация"))
+			result.putAll(TextUtils.processDate(FormDate.GENERATION, null));
+		if (!result.containsKey("Дата.Получение.День"))
+			result.putAll(TextUtils.processDate(FormDate.PICKUP, null));
+		return result;
+	}
+
+	/**
+	 * Построитель записи.
+	 */
+	public static class Builder {
+		private final ArrayList<String> trackingCodes = new ArrayList<>();
+		private final HashMap<String, String> formData = new HashMap<>();
+
+		/**
+		 * Запоминает значение поля. Пустые значения и неизвестные поля пропускаются.
+		 * @param name Имя поля
+		 * @param value Значение. Коды отслеживания разделяются точкой с запятой, запятой или пробелом
+		 */
+		public Builder put(String name, String value) {
+			if (value == null || value.isEmpty())
+				return this;
+
+			if (is(name, "track", "tracks")) {
+				for (String trackingCode : value.split("[;,\\s]+"))
+					if (!trackingCode.isEmpty())
+						trackingCodes.add(trackingCode);
+			} else if (name.endsWith("-date")) {
+				formData.putAll(TextUtils.processDate(FormDate.fromCli(name), value));
+			} else for (String[] udp : Constants.USER_DEFINED_PARAMETERS)
+				if (is(name, udp[0]))
+					formData.put(udp[1], value);
+			return this;
+		}
+
+		/**
+		 * Считывает значение поля JSON-объекта. Коды отслеживания могут быть указаны
+		 * массивом. Значения неизвестных полей пропускаются.
+		 * @param name Имя поля, уже считанное из объекта
+		 * @param json Объект, следующий элемент которого - значение поля
+		 */
+		public Builder read(String name, JsonReader json) throws IOException {
+			if (!isField(name)) {
+				Logger.verbose("Пропускаю неизвестное поле: " + name);
+				json.skipValue();
+			} else if (json.peek() == JsonReader.Token.BEGIN_ARRAY) {
+				json.beginArray();
+				while (json.hasNext())
+					put(name, json.nextString());
+				json.endArray();
+			} else put(name, json.nextString());
+			return this;
+		}
+
+		public FormRecord build() {
+			return new FormRecord(this);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+package dev.kerastinell.pochtaizv.job;
+
+import dev.kerastinell.pochtaizv.GeneratorConfig;
+import dev.kerastinell.pochtaizv.PochtaDataFetcher;
+import dev.kerastinell.pochtaizv.stats.Stage;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.template.Notice;
+import dev.kerastinell.pochtaizv.util.Concurrency;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Двухступенчатый конвейер выполнения задач.
+ *
+ * На первой ступени данные об отправлениях асинхронно загружаются с сервера
+ * Почты России пачками по {@link Constants#API_BATCH_SIZE} кодов, при этом
+ * одновременно загружается не более {@link GeneratorConfig#getApiMaxRequests()}
+ * пачек. На второй ступени пул из {@link GeneratorConfig#getThreads()} потоков
+ * заполняет шаблоны, генерирует штрихкоды и записывает документы для каждой
+ * загруженной пачки, пока загружаются следующие.
+ *
+ * Очередь второй ступени ограничена. Если она заполнена, задачу выполняет поток,
+ * завершивший загрузку пачки, и новые запросы к серверу не начинаются до тех пор,
+ * пока обработка не догонит загрузку. На Java 21 и новее вместо пула каждая
+ * задача выполняется в собственном виртуальном потоке, но количество незавершённых
+ * задач ограничено так же, см. {@link Concurrency}.
+ *
+ * Каждая задача должна завершиться за {@link GeneratorConfig#getJobTimeoutSeconds()}
+ * с момента начала загрузки её данных, а все переданные вместе задачи - за
+ * {@link GeneratorConfig#getRunTimeoutSeconds()}. Задачи, не успевшие завершиться,
+ * а также задачи, отменённые методом {@link #cancel()} (например, по Ctrl-C),
+ * не начинают вторую ступень и попадают в итоги {@link JobSummary} отдельно
+ * от завершившихся ошибкой. Сроки и отмена действуют только до начала второй
+ * ступени: начавшаяся задача доводится до конца, и в итоги попадает её настоящий
+ * результат, так как файл задачи уже может быть записан. Пачка, ожидающая очереди
+ * на загрузку, также не ждёт дольше общего срока и отмены.
+ */
+public class JobPipeline {
+	private final PochtaDataFetcher pochtaDataFetcher;
+
+	// Ограничение количества одновременно загружаемых пачек
+	private final Semaphore fetchPermits;
+	// Пул потоков второй ступени
+	private final ExecutorService renderExecutor;
+	// Поток, отсчитывающий сроки выполнения задач
+	private final ScheduledExecutorService timer;
+
+	private final long jobTimeoutMillis;
+	private final long runTimeoutMillis;
+
+	// Незавершённые задачи, которые будут отменены методом cancel(), и признаки того,
+	// что результат задачи уже определяется: началась вторая ступень или задача прервана
+	private final ConcurrentHashMap<CompletableFuture<?>, AtomicBoolean> pending;
+	private volatile boolean cancelled;
+	private final CountDownLatch cancellation = new CountDownLatch(1);
+
+	private final JobSummary summary;
+
+	/**
+	 * @param pochtaDataFetcher Инициализированный загрузчик данных, параметры
+	 *                          конвейера берутся из его {@link GeneratorConfig}
+	 */
+	public JobPipeline(PochtaDataFetcher pochtaDataFetcher) {
+		this.pochtaDataFetcher = pochtaDataFetcher;
+		final GeneratorConfig config = pochtaDataFetcher.getConfig();
+
+		fetchPermits = new Semaphore(config.getApiMaxRequests());
+		renderExecutor = Concurrency.newRenderExecutor(config.getThreads(), Constants.RENDER_QUEUE_SIZE_PER_THREAD);
+		if (Concurrency.isVirtual())
+			Logger.verbose("[JobPipeline] Задачи выполняются в виртуальных потоках");
+		timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "JobPipeline Timer Thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		jobTimeoutMillis = TimeUnit.SECONDS.toMillis(config.getJobTimeoutSeconds());
+		runTimeoutMillis = TimeUnit.SECONDS.toMillis(config.getRunTimeoutSeconds());
+
+		pending = new ConcurrentHashMap<>();
+		summary = new JobSummary();
+	}
+
+	/**
+	 * Выполняет задачи полностью, каждая записывает собственный файл.
+	 * Возвращает управление после завершения всех задач.
+	 * @param jobs Задачи
+	 */
+	public void run(List<AbstractJob> jobs) {
+		await(write(jobs));
+	}
+
+	/**
+	 * Передаёт задачи в конвейер, каждая запишет собственный файл.
+	 * В отличие от {@link #run(List)}, не дожидается завершения задач.
+	 * @param jobs Задачи
+	 * @return Результаты задач в порядке их следования
+	 */
+	public List<CompletableFuture<Void>> write(List<AbstractJob> jobs) {
+		return submit(jobs, job -> {
+			try {
+				job.write();
+			} catch (IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Ожидает завершения задач, переданных в конвейер.
+	 * @param results Результаты задач
+	 */
+	public static void await(List<? extends CompletableFuture<?>> results) {
+		for (CompletableFuture<?> future : results) {
+			try {
+				future.join();
+			} catch (CompletionException | CancellationException ignored) {
+				// Ошибка уже выведена и учтена в итогах
+			}
+		}
+	}
+
+	/**
+	 * Подготавливает извещения задач для записи в один документ и дожидается их.
+	 * Используется долго работающими генератором {@link dev.kerastinell.pochtaizv.NoticeGenerator}
+	 * и сервером --serve: данные об отправлениях могли измениться с предыдущего
+	 * обращения, поэтому загружаются заново, а после подготовки забываются, чтобы
+	 * не накапливаться в памяти. Прибывшие отправления по-прежнему берутся из кэша.
+	 * @param jobs Задачи
+	 * @return Подготовленные извещения и коды задач, выполненных неуспешно или с неполными данными
+	 */
+	public PreparedNotices prepare(List<AbstractJob> jobs) {
+		final LinkedHashSet<String> trackingCodes = new LinkedHashSet<>();
+		for (AbstractJob job : jobs)
+			if (!job.getTrackingCode().isEmpty())
+				trackingCodes.add(job.getTrackingCode());
+		pochtaDataFetcher.forget(trackingCodes);
+
+		try {
+			final ArrayList<Notice> notices = new ArrayList<>();
+			final ArrayList<String> failed = new ArrayList<>();
+			Throwable cause = null;
+
+			final List<CompletableFuture<Notice>> futures = submit(jobs, AbstractJob::prepare);
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					notices.add(futures.get(i).join());
+				} catch (CompletionException | CancellationException exception) {
+					failed.add(jobs.get(i).getTrackingCode());
+					if (cause == null)
+						cause = exception.getCause() != null ? exception.getCause() : exception;
+				}
+			}
+
+			final List<String> degraded = trackingCodes.stream()
+					.filter(pochtaDataFetcher::isDegraded)
+					.collect(Collectors.toList());
+			if (!degraded.isEmpty())
+				Logger.error(String.format("Не удалось получить данные от сервера для отправлений (%d шт.): %s",
+						degraded.size(), String.join(", ", degraded)));
+
+			return new PreparedNotices(notices, failed, degraded, cause);
+		} finally {
+			pochtaDataFetcher.forget(trackingCodes);
+		}
+	}
+
+	/**
+	 * Передаёт задачи в конвейер. Для каждой задачи сначала загружаются данные
+	 * об отправлении, затем на второй ступени выполняется указанное действие.
+	 * Метод блокируется, если одновременно загружается слишком много пачек.
+	 * @param jobs Задачи
+	 * @param stage Действие второй ступени
+	 * @param <T> Тип результата действия
+	 * @return Результаты действия в порядке следования задач. Результат задачи,
+	 *         не успевшей начать вторую ступень в свой срок или до общего срока, завершается
+	 *         с {@link TimeoutException}, отменённой до её начала - с {@link CancellationException}
+	 */
+	public <T> List<CompletableFuture<T>> submit(List<AbstractJob> jobs, Function<AbstractJob, T> stage) {
+		final long deadline = runTimeoutMillis > 0 ? System.currentTimeMillis() + runTimeoutMillis : Long.MAX_VALUE;
+		final ArrayList<CompletableFuture<T>> results = new ArrayList<>(Collections.nCopies(jobs.size(), null));
+		// Время задачи отсчитывается с передачи в конвейер, включая ожидание загрузки
+		final ArrayList<Stats.Span> spans = new ArrayList<>(jobs.size());
+		for (AbstractJob job : jobs)
+			spans.add(Stats.start(Stage.JOB, job.getTrackingCode()));
+		// Индексы задач текущей пачки
+		final ArrayList<Integer> batch = new ArrayList<>();
+
+		for (int i = 0; i < jobs.size(); i++) {
+			final AbstractJob job = jobs.get(i);
+
+			// Задачам без кода отслеживания загружать нечего
+			if (job.getTrackingCode().isEmpty()) {
+				results.set(i, schedule(job, spans.get(i), CompletableFuture.completedFuture(null), stage, deadline));
+				continue;
+			}
+
+			batch.add(i);
+			if (batch.size() == Constants.API_BATCH_SIZE) {
+				submitBatch(jobs, spans, batch, stage, results, deadline);
+				batch.clear();
+			}
+		}
+
+		if (!batch.isEmpty())
+			submitBatch(jobs, spans, batch, stage, results, deadline);
+
+		return results;
+	}
+
+	/**
+	 * Загружает данные пачки задач и передаёт задачи на вторую ступень по готовности.
+	 * @param jobs Все задачи
+	 * @param spans Время выполнения всех задач
+	 * @param batch Индексы задач пачки
+	 * @param stage Действие второй ступени
+	 * @param results Результаты действия, куда добавляются результаты задач пачки
+	 * @param deadline Время, к которому должны завершиться все задачи
+	 */
+	private <T> void submitBatch(List<AbstractJob> jobs, List<Stats.Span> spans, List<Integer> batch,
+								 Function<AbstractJob, T> stage, List<CompletableFuture<T>> results, long deadline) {
+		// Если задачи отменены или время вышло, пока пачка ждала очереди,
+		// загружать её уже незачем: задачи завершатся при назначении
+		CompletableFuture<Void> fetched = CompletableFuture.completedFuture(null);
+		if (acquireFetchPermit(deadline)) {
+			final ArrayList<String> trackingCodes = new ArrayList<>();
+			for (int i : batch)
+				trackingCodes.add(jobs.get(i).getTrackingCode());
+
+			fetched = pochtaDataFetcher.prefetchAsync(trackingCodes)
+					.whenComplete((result, exception) -> fetchPermits.release());
+		}
+
+		for (int i : batch)
+			results.set(i, schedule(jobs.get(i), spans.get(i), fetched, stage, deadline));
+	}
+
+	/**
+	 * Ожидает очереди на загрузку пачки до общего срока или отмены задач.
+	 * @param deadline Время, к которому должны завершиться все задачи
+	 * @return true, если загрузку можно начинать
+	 */
+	private boolean acquireFetchPermit(long deadline) {
+		try {
+			while (!cancelled) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					return false;
+				if (fetchPermits.tryAcquire(Math.min(remaining, Constants.FETCH_PERMIT_POLL_MS), TimeUnit.MILLISECONDS))
+					return true;
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Назначает выполнение второй ступени задачи после загрузки данных
+	 * и отсчитывает сроки её выполнения.
+	 * @param job Задача
+	 * @param span Время выполнения задачи, завершается вместе с ней
+	 * @param fetched Загрузка данных пачки задачи
+	 * @param stage Действие второй ступени
+	 * @param deadline Время, к которому должны завершиться все задачи
+	 * @return Результат действия
+	 */
+	private <T> CompletableFuture<T> schedule(AbstractJob job, Stats.Span span, CompletableFuture<Void> fetched,
+											  Function<AbstractJob, T> stage, long deadline) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final AtomicBoolean started = new AtomicBoolean();
+		pending.put(result, started);
+
+		final long now = System.currentTimeMillis();
+		final long timeoutAt = jobTimeoutMillis > 0 ? now + jobTimeoutMillis : Long.MAX_VALUE;
+		ScheduledFuture<?> timeout = null;
+		if (Math.min(timeoutAt, deadline) != Long.MAX_VALUE)
+			timeout = timer.schedule(() -> abort(result, started, new TimeoutException()),
+					Math.max(0, Math.min(timeoutAt, deadline) - now), TimeUnit.MILLISECONDS);
+		if (cancelled)
+			abort(result, started, new CancellationException());
+		else if (now >= deadline)
+			abort(result, started, new TimeoutException());
+
+		final ScheduledFuture<?> scheduledTimeout = timeout;
+		result.whenComplete((value, exception) -> {
+			pending.remove(result);
+			if (scheduledTimeout != null)
+				scheduledTimeout.cancel(false);
+			span.end();
+
+			final JobSummary.Outcome outcome = JobSummary.Outcome.of(exception);
+			summary.add(job.getTrackingCode(), outcome);
+			if (outcome == JobSummary.Outcome.FAILED)
+				Logger.error("Ошибка при выполнении задачи!", exception);
+			else if (outcome == JobSummary.Outcome.TIMED_OUT)
+				Logger.track(job.getTrackingCode(), "Задача не завершилась вовремя!");
+		});
+
+		fetched.thenRunAsync(() -> {
+			// Задача уже не успела завершиться или отменена
+			if (!started.compareAndSet(false, true))
+				return;
+
+			try {
+				result.complete(stage.apply(job));
+			} catch (Throwable exception) {
+				result.completeExceptionally(exception);
+			}
+		}, renderExecutor);
+
+		return result;
+	}
+
+	/**
+	 * Прерывает задачу с указанной ошибкой, если её вторая ступень ещё не началась.
+	 * @param result Результат задачи
+	 * @param started Признак начала второй ступени
+	 * @param exception Ошибка: {@link TimeoutException} или {@link CancellationException}
+	 */
+	private static void abort(CompletableFuture<?> result, AtomicBoolean started, Throwable exception) {
+		if (started.compareAndSet(false, true))
+			result.completeExceptionally(exception);
+	}
+
+	/**
+	 * Отменяет все задачи, вторая ступень которых ещё не началась. Задачи,
+	 * выполняющиеся в данный момент, доводятся до конца, и их результат учитывается.
+	 */
+	public void cancel() {
+		cancelled = true;
+		cancellation.countDown();
+		pending.forEach((future, started) -> abort(future, started, new CancellationException()));
+	}
+
+	/**
+	 * @return true, если задачи отменены методом {@link #cancel()}
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Ожидает отмены задач, но не дольше указанного времени.
+	 * Используется задачами, которые ждут между обращениями к конвейеру.
+	 * @param millis Наибольшее время ожидания в миллисекундах
+	 * @return true, если задачи отменены
+	 * @throws InterruptedException Если ожидание прервано
+	 */
+	public boolean awaitCancellation(long millis) throws InterruptedException {
+		return cancellation.await(millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Возвращает итоги всех задач, переданных в конвейер.
+	 * @return Итоги выполнения задач
+	 */
+	public JobSummary getSummary() {
+		return summary;
+	}
+
+	/**
+	 * Завершает работу пулов потоков.
+	 */
+	public void shutdown() {
+		renderExecutor.shutdown();
+		timer.shutdownNow();
+	}
+}
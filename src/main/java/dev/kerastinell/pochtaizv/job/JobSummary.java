@@ -0,0 +1,94 @@
+package dev.kerastinell.pochtaizv.job;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Итоги выполнения задач: количество задач по результату и коды отслеживания
+ * задач, выполненных неуспешно. Коды успешных задач не хранятся, поэтому
+ * итоги долго работающего генератора или сервера не растут без ограничения.
+ */
+public class JobSummary {
+	public enum Outcome {
+		SUCCEEDED("успешно"),
+		FAILED("с ошибкой"),
+		TIMED_OUT("превышено время"),
+		CANCELLED("отменено");
+
+		private final String description;
+
+		Outcome(String description) {
+			this.description = description;
+		}
+
+		/**
+		 * Определяет результат задачи по ошибке, с которой она завершилась.
+		 * @param exception Ошибка или null, если задача выполнена успешно
+		 * @return Результат задачи
+		 */
+		public static Outcome of(Throwable exception) {
+			while ((exception instanceof CompletionException || exception instanceof ExecutionException) &&
+					exception.getCause() != null)
+				exception = exception.getCause();
+
+			if (exception == null)
+				return SUCCEEDED;
+			if (exception instanceof TimeoutException)
+				return TIMED_OUT;
+			if (exception instanceof CancellationException)
+				return CANCELLED;
+			return FAILED;
+		}
+	}
+
+	private final EnumMap<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+	private final EnumMap<Outcome, List<String>> trackingCodes = new EnumMap<>(Outcome.class);
+
+	/**
+	 * Запоминает результат задачи.
+	 * @param trackingCode Код отслеживания
+	 * @param outcome Результат
+	 */
+	public synchronized void add(String trackingCode, Outcome outcome) {
+		counts.merge(outcome, 1, Integer::sum);
+		if (outcome != Outcome.SUCCEEDED)
+			trackingCodes.computeIfAbsent(outcome, key -> new ArrayList<>())
+					.add(trackingCode.isEmpty() ? "без кода" : trackingCode);
+	}
+
+	/**
+	 * @param outcome Результат
+	 * @return Количество задач с указанным результатом
+	 */
+	public synchronized int count(Outcome outcome) {
+		return counts.getOrDefault(outcome, 0);
+	}
+
+	/**
+	 * Выводит итоги. Если не все задачи выполнены успешно, итоги выводятся как ошибка.
+	 */
+	public synchronized void print() {
+		if (counts.isEmpty())
+			return;
+
+		final StringBuilder summary = new StringBuilder("Итого:");
+		for (Outcome outcome : Outcome.values()) {
+			final List<String> codes = trackingCodes.getOrDefault(outcome, new ArrayList<>());
+			summary.append(outcome == Outcome.SUCCEEDED ? " " : ", ")
+					.append(outcome.description).append(' ').append(count(outcome));
+			if (!codes.isEmpty())
+				summary.append(" (").append(String.join(", ", codes)).append(')');
+		}
+
+		if (trackingCodes.isEmpty())
+			Logger.verbose(summary.toString());
+		else Logger.error(summary.toString());
+	}
+}
@@ -0,0 +1,52 @@
+package dev.kerastinell.pochtaizv.job;
+
+import dev.kerastinell.pochtaizv.template.Notice;
+
+import java.util.List;
+
+/**
+ * Извещения, подготовленные методом {@link JobPipeline#prepare(List)} для записи в один документ,
+ * и коды отслеживания задач, выполненных неуспешно или с неполными данными.
+ */
+public class PreparedNotices {
+	private final List<Notice> notices;
+	private final List<String> failed;
+	private final List<String> degraded;
+	private final Throwable cause;
+
+	PreparedNotices(List<Notice> notices, List<String> failed, List<String> degraded, Throwable cause) {
+		this.notices = notices;
+		this.failed = failed;
+		this.degraded = degraded;
+		this.cause = cause;
+	}
+
+	/**
+	 * @return Подготовленные извещения в порядке следования задач
+	 */
+	public List<Notice> getNotices() {
+		return notices;
+	}
+
+	/**
+	 * @return Коды задач, извещения для которых подготовить не удалось
+	 */
+	public List<String> getFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return Коды отправлений, данные о которых не удалось получить от сервера.
+	 *         Их извещения заполнены из кэша или значениями по-умолчанию
+	 */
+	public List<String> getDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * @return Ошибка первой задачи, извещение для которой подготовить не удалось, или null
+	 */
+	public Throwable getCause() {
+		return cause;
+	}
+}
@@ -0,0 +1,209 @@
+package dev.kerastinell.pochtaizv.job.impl;
+
+import dev.kerastinell.pochtaizv.PochtaDataFetcher;
+import dev.kerastinell.pochtaizv.job.AbstractJob;
+import dev.kerastinell.pochtaizv.job.FormRecord;
+import dev.kerastinell.pochtaizv.job.JobPipeline;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.csv.CsvReader;
+import dev.kerastinell.pochtaizv.util.json.JsonReader;
+import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Задача пакетной генерации извещений для многих получателей (--batch).
+ *
+ * Считывает записи {@link FormRecord} из файла или стандартного ввода и генерирует
+ * для каждой записи извещения с её данными получателя. Данные, указанные
+ * в параметрах командной строки, используются для полей, отсутствующих в записи.
+ * Формат определяется по первому символу: JSON Lines (по объекту на строку)
+ * или CSV с заголовком из имён полей, например: name;address;tracks
+ *
+ * Записи считываются по мере выполнения задач: в конвейере одновременно
+ * находится не более двух окон по {@link Constants#BATCH_WINDOW_SIZE} задач,
+ * а данные об отправлениях выполненного окна забываются, см.
+ * {@link PochtaDataFetcher#forget(java.util.Collection)}, поэтому расход памяти
+ * не зависит от размера файла. Коды, данные о которых не удалось получить от
+ * сервера, поэтому перечисляются после каждого окна, а не по завершении программы.
+ */
+public class BatchJob implements Runnable {
+	private final String source;
+	private final PochtaDataFetcher pochtaDataFetcher;
+	private final JobPipeline pipeline;
+
+	/**
+	 * Источник записей.
+	 */
+	private interface RecordSource {
+		/**
+		 * @return Следующая запись или null, если записей больше нет
+		 */
+		FormRecord next() throws IOException;
+	}
+
+	/**
+	 * @param source Путь к файлу или "-" для стандартного ввода
+	 * @param pochtaDataFetcher Источник данных об отправлениях
+	 * @param pipeline Конвейер, выполняющий задачи
+	 */
+	public BatchJob(String source, PochtaDataFetcher pochtaDataFetcher, JobPipeline pipeline) {
+		this.source = source;
+		this.pochtaDataFetcher = pochtaDataFetcher;
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void run() {
+		try (BufferedReader reader = source.equals("-") ?
+				new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+				Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+			final RecordSource records = isJsonLines(reader) ? jsonLines(reader) : csv(new CsvReader(reader));
+
+			int recordCount = 0;
+			ArrayList<AbstractJob> window = new ArrayList<>();
+			List<CompletableFuture<Void>> previous = Collections.emptyList();
+			List<AbstractJob> previousWindow = Collections.emptyList();
+
+			// После отмены задач (Ctrl-C) записи больше не считываются
+			FormRecord record;
+			while (!pipeline.isCancelled() && (record = records.next()) != null) {
+				recordCount++;
+
+				final Map<String, String> formData = record.getFormData(GlobalOptions.INITIAL_FORM_DATA);
+				// Запись без кодов отслеживания - одно извещение без штрихкода
+				if (record.getTrackingCodes().isEmpty())
+					window.add(new NormalFormJob("", formData, pochtaDataFetcher));
+				else for (String trackingCode : record.getTrackingCodes())
+					window.add(new NormalFormJob(trackingCode, formData, pochtaDataFetcher));
+
+				// Окно передаётся в конвейер, пока выполняется предыдущее
+				if (window.size() >= Constants.BATCH_WINDOW_SIZE) {
+					final List<CompletableFuture<Void>> submitted = pipeline.write(window);
+					JobPipeline.await(previous);
+					forget(previousWindow);
+					previous = submitted;
+					previousWindow = window;
+					window = new ArrayList<>();
+				}
+			}
+
+			final List<CompletableFuture<Void>> submitted = pipeline.write(window);
+			JobPipeline.await(previous);
+			forget(previousWindow);
+			JobPipeline.await(submitted);
+			forget(window);
+
+			Logger.verbose(String.format(pipeline.isCancelled() ?
+					"Пакетная генерация прервана, обработано записей: %d" : "Обработано записей: %d", recordCount));
+		} catch (IOException exception) {
+			Logger.error("Ошибка при чтении записей из " + (source.equals("-") ? "стандартного ввода" : source), exception);
+		}
+	}
+
+	/**
+	 * Забывает данные об отправлениях выполненного окна, предварительно
+	 * перечислив коды, данные о которых не удалось получить от сервера.
+	 * @param window Выполненные задачи
+	 */
+	private void forget(List<AbstractJob> window) {
+		final TreeSet<String> trackingCodes = new TreeSet<>();
+		for (AbstractJob job : window)
+			if (!job.getTrackingCode().isEmpty())
+				trackingCodes.add(job.getTrackingCode());
+
+		final List<String> degraded = trackingCodes.stream()
+				.filter(pochtaDataFetcher::isDegraded)
+				.collect(Collectors.toList());
+		if (!degraded.isEmpty())
+			Logger.error(String.format("Не удалось получить данные от сервера для отправлений (%d шт.): %s",
+					degraded.size(), String.join(", ", degraded)));
+
+		pochtaDataFetcher.forget(trackingCodes);
+	}
+
+	/**
+	 * Определяет формат записей по первому значащему символу, не считывая его.
+	 * @return true для JSON Lines, false для CSV
+	 */
+	private static boolean isJsonLines(BufferedReader reader) throws IOException {
+		while (true) {
+			reader.mark(1);
+			final int c = reader.read();
+			// Пропустить BOM, который добавляют некоторые редакторы, и пустые строки
+			if (c == '\uFEFF' || Character.isWhitespace(c))
+				continue;
+
+			reader.reset();
+			return c == '{';
+		}
+	}
+
+	/**
+	 * Записи в формате JSON Lines: по объекту на строку. Строки, которые не удалось
+	 * разобрать, пропускаются.
+	 */
+	private static RecordSource jsonLines(BufferedReader reader) {
+		final int[] lineNumber = {0};
+
+		return () -> {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber[0]++;
+				if (line.trim().isEmpty())
+					continue;
+
+				try {
+					final FormRecord.Builder record = new FormRecord.Builder();
+					final JsonReader json = new JsonReader(new StringReader(line));
+					json.beginObject();
+					while (json.hasNext())
+						record.read(json.nextName(), json);
+					json.endObject();
+					return record.build();
+				} catch (IOException exception) {
+					Logger.error(String.format("Пропускаю строку %d: %s", lineNumber[0], exception.getMessage()));
+				}
+			}
+			return null;
+		};
+	}
+
+	/**
+	 * Записи в формате CSV. Первая запись - заголовок с именами полей,
+	 * столбцы с неизвестными именами пропускаются.
+	 */
+	private static RecordSource csv(CsvReader reader) throws IOException {
+		final List<String> header = reader.readRecord();
+		if (header == null)
+			return () -> null;
+
+		for (int i = 0; i < header.size(); i++) {
+			header.set(i, header.get(i).trim().toLowerCase());
+			if (!FormRecord.isField(header.get(i)))
+				Logger.verbose("Пропускаю неизвестный столбец: " + header.get(i));
+		}
+
+		return () -> {
+			List<String> values;
+			while ((values = reader.readRecord()) != null) {
+				// Пустые строки пропускаются
+				if (values.size() == 1 && values.get(0).trim().isEmpty())
+					continue;
+
+				final FormRecord.Builder record = new FormRecord.Builder();
+				for (int i = 0; i < Math.min(header.size(), values.size()); i++)
+					record.put(header.get(i), values.get(i).trim());
+				return record.build();
+			}
+			return null;
+		};
+	}
+}
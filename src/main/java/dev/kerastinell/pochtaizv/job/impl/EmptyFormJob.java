@@ -2,7 +2,6 @@ package dev.kerastinell.pochtaizv.job.impl;
 
 import dev.kerastinell.pochtaizv.job.AbstractJob;
 
-import java.io.InputStream;
 import java.util.HashMap;
 
 /**
@@ -22,7 +21,7 @@ public class EmptyFormJob extends AbstractJob {
 
 	@Override
 	protected String getFileName() {
-		return "Извещение.odg";
+		return "Извещение." + format.getExtension();
 	}
 
 	@Override
@@ -31,7 +30,7 @@ public class EmptyFormJob extends AbstractJob {
 	}
 
 	@Override
-	protected InputStream getBarcodeImage() {
+	protected byte[] getBarcodeImage() {
 		return null;
 	}
 }
@@ -1,6 +1,10 @@
 package dev.kerastinell.pochtaizv.job.impl;
 
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.GeneratorConfig;
 import dev.kerastinell.pochtaizv.PochtaDataFetcher;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
 import dev.kerastinell.pochtaizv.util.*;
 import dev.kerastinell.pochtaizv.util.io.IoUtils;
 import dev.kerastinell.pochtaizv.values.Constants;
@@ -8,6 +12,7 @@ import dev.kerastinell.pochtaizv.values.GlobalOptions;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
 
@@ -63,6 +68,25 @@ public class InitialFormDataJob implements Runnable {
 				case "--no-input":
 					GlobalOptions.NO_INPUT = true;
 					continue;
+				case "--single-file":
+					GlobalOptions.SINGLE_FILE = true;
+					continue;
+				case "--stdout":
+					GlobalOptions.STDOUT = true;
+					continue;
+				case "--no-cache":
+					GlobalOptions.NO_CACHE = true;
+					continue;
+				case "--watch":
+					GlobalOptions.WATCH = true;
+					continue;
+				case "--stats":
+					GlobalOptions.STATS = true;
+					continue;
+				case "--serve":
+					GlobalOptions.SERVE_PORT = Constants.SERVE_DEFAULT_PORT;
+					GlobalOptions.NO_INPUT = true;
+					continue;
 			}
 
 			// Все остальные параметры должны передавать значение:
@@ -81,6 +105,150 @@ public class InitialFormDataJob implements Runnable {
 				GlobalOptions.API_USER_AGENT = value;
 			}
 
+			// Парсинг формата выходного документа
+			if (is(arg, "format")) {
+				final DocumentFormat format = DocumentFormat.fromCli(value);
+				if (format != null)
+					GlobalOptions.FORMAT = format;
+				continue;
+			}
+
+			// Парсинг формата изображения штрихкода
+			if (is(arg, "barcode")) {
+				final BarcodeFormat format = BarcodeFormat.fromCli(value);
+				if (format != null)
+					GlobalOptions.BARCODE_FORMAT = format;
+				continue;
+			}
+
+			// Парсинг срока актуальности кэша
+			if (is(arg, "cache-ttl")) {
+				try {
+					GlobalOptions.CACHE_TTL_HOURS = Long.parseLong(value);
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверный срок актуальности кэша: " + value);
+				}
+				continue;
+			}
+
+			// Парсинг интервала проверки отправлений в режиме наблюдения
+			if (is(arg, "watch-interval")) {
+				try {
+					GlobalOptions.WATCH_INTERVAL_MINUTES = Long.parseLong(value);
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверный интервал проверки отправлений: " + value);
+				}
+				continue;
+			}
+
+			// Парсинг наибольшей продолжительности наблюдения за отправлениями
+			if (is(arg, "watch-max-days")) {
+				try {
+					GlobalOptions.WATCH_MAX_DAYS = Long.parseLong(value);
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверная продолжительность наблюдения: " + value);
+				}
+				continue;
+			}
+
+			// Парсинг количества потоков и сроков выполнения задач
+			if (is(arg, "threads")) {
+				try {
+					GlobalOptions.THREADS = Math.max(1, Integer.parseInt(value));
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверное количество потоков: " + value);
+				}
+				continue;
+			}
+
+			if (is(arg, "job-timeout", "timeout")) {
+				try {
+					if (is(arg, "job-timeout"))
+						GlobalOptions.JOB_TIMEOUT_SECONDS = Long.parseLong(value);
+					else GlobalOptions.RUN_TIMEOUT_SECONDS = Long.parseLong(value);
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверный срок выполнения: " + value);
+				}
+				continue;
+			}
+
+			// Парсинг ограничений запросов к серверу
+			if (is(arg, "rate")) {
+				try {
+					GlobalOptions.API_RATE = Double.parseDouble(value);
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверная частота запросов: " + value);
+				}
+				continue;
+			}
+
+			if (is(arg, "max-requests")) {
+				try {
+					GlobalOptions.API_MAX_REQUESTS = Math.max(1, Integer.parseInt(value));
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверное количество одновременных запросов: " + value);
+				}
+				continue;
+			}
+
+			// Парсинг адреса сервера и директории для записи его ответов
+			if (is(arg, "api-url")) {
+				GlobalOptions.API_URL = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+				continue;
+			}
+
+			if (is(arg, "record")) {
+				GlobalOptions.RECORD_DIR = Paths.get(value);
+				continue;
+			}
+
+			// Парсинг уровня и формата сообщений
+			if (is(arg, "log-level")) {
+				final Logger.Level level = Logger.Level.fromCli(value);
+				if (level != null)
+					GlobalOptions.LOG_LEVEL = level;
+				else Logger.verbose("Неизвестный уровень сообщений: " + value);
+				continue;
+			}
+
+			if (is(arg, "log-format")) {
+				if (is(value, "json", "text"))
+					GlobalOptions.LOG_JSON = is(value, "json");
+				else Logger.verbose("Неизвестный формат сообщений: " + value);
+				continue;
+			}
+
+			if (is(arg, "stats-json")) {
+				GlobalOptions.STATS_REPORT = Paths.get(value);
+				continue;
+			}
+
+			// Парсинг порта локального сервера генерации извещений. Данные
+			// извещений передаются в запросах к серверу, поэтому не запрашиваются
+			if (is(arg, "serve")) {
+				try {
+					GlobalOptions.SERVE_PORT = Integer.parseInt(value);
+					GlobalOptions.NO_INPUT = true;
+				} catch (NumberFormatException exception) {
+					Logger.verbose("Неверный порт сервера: " + value);
+				}
+				continue;
+			}
+
+			// Парсинг директории, в которую сервер генерации извещений записывает документы
+			if (is(arg, "serve-dir")) {
+				GlobalOptions.SERVE_DIR = Paths.get(value);
+				continue;
+			}
+
+			// Парсинг источника записей для пакетной генерации. Коды отслеживания
+			// и данные получателей указываются в записях, поэтому не запрашиваются
+			if (is(arg, "batch")) {
+				GlobalOptions.BATCH_SOURCE = value;
+				GlobalOptions.NO_INPUT = true;
+				continue;
+			}
+
 			// Парсинг кодов отслеживания
 			if (is(arg, "track", "tracks")) {
 				TRACKING_CODES.addAll(Arrays.asList(value.split(";")));
@@ -98,8 +266,9 @@ public class InitialFormDataJob implements Runnable {
 					formData.put(udp[1], value);
 		}
 
-		// Пользователь не указал коды отслеживания отправлений
-		if (TRACKING_CODES.size() == 0) {
+		// Пользователь не указал коды отслеживания отправлений. Серверу генерации
+		// извещений коды передаются в запросах, при пакетной генерации - в записях
+		if (TRACKING_CODES.size() == 0 && GlobalOptions.SERVE_PORT == 0 && GlobalOptions.BATCH_SOURCE == null) {
 			if (GlobalOptions.NO_INPUT) {
 				Logger.verbose("Не указаны коды отслеживания! Будет сгенирировано одно извещение без штрихкода");
 				TRACKING_CODES.add("");
@@ -115,8 +284,12 @@ public class InitialFormDataJob implements Runnable {
 			}
 		}
 
-		// Начать инициализацию pochtaDataFetcher
-		pochtaDataFetcher.initialize();
+		// Измерять время этапов (--stats, --stats-json), начиная с инициализации
+		if (GlobalOptions.STATS || GlobalOptions.STATS_REPORT != null)
+			Stats.enable();
+
+		// Начать инициализацию pochtaDataFetcher с параметрами командной строки
+		pochtaDataFetcher.initialize(GeneratorConfig.fromGlobalOptions());
 
 		// Чтение параметров завершено, проверить и попросить ввести пользователя недостающие данные
 		for (String key : formData.keySet()) {
@@ -133,14 +306,15 @@ public class InitialFormDataJob implements Runnable {
 			formData.putAll(TextUtils.processDate(FormDate.ID_ISSUE, askForInput("Дата выдачи документа в формате ISO 8601: ")));
 		}
 
-		// Пользователь не указал дату генерации извещения, использовать текущую
-		if (formData.get("Дата.Генерация") == null)
+		// Пользователь не указал дату генерации извещения, использовать текущую.
+		// Сервер генерации извещений работает долго и подставляет дату каждого запроса
+		if (formData.get("Дата.Генерация") == null && GlobalOptions.SERVE_PORT == 0)
 			formData.putAll(TextUtils.processDate(FormDate.GENERATION, null));
 
 		// Пользователь не указал дату получения отправления, использовать текущую
-		if (formData.get("Дата.Получение.День") == null ||
+		if ((formData.get("Дата.Получение.День") == null ||
 				formData.get("Дата.Получение.Месяц") == null ||
-				formData.get("Дата.Получение.Год") == null) {
+				formData.get("Дата.Получение.Год") == null) && GlobalOptions.SERVE_PORT == 0) {
 			formData.putAll(TextUtils.processDate(FormDate.PICKUP, null));
 		}
 
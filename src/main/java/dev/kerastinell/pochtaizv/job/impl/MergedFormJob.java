@@ -0,0 +1,72 @@
+package dev.kerastinell.pochtaizv.job.impl;
+
+import dev.kerastinell.pochtaizv.job.AbstractJob;
+import dev.kerastinell.pochtaizv.job.JobPipeline;
+import dev.kerastinell.pochtaizv.template.Notice;
+import dev.kerastinell.pochtaizv.template.TemplateBundle;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Задача, объединяющая извещения нескольких задач в один документ,
+ * в котором каждое извещение занимает отдельную страницу. Документ записывается
+ * в файл либо, если установлен флаг {@link GlobalOptions#STDOUT}, в стандартный вывод.
+ * @see AbstractJob
+ */
+public class MergedFormJob implements Runnable {
+	private final List<AbstractJob> jobs;
+	private final JobPipeline pipeline;
+
+	private final File outputFile;
+
+	/**
+	 * @param jobs Задачи, извещения которых попадут в документ в указанном порядке
+	 * @param pipeline Конвейер, в котором параллельно подготавливаются данные извещений
+	 */
+	public MergedFormJob(List<AbstractJob> jobs, JobPipeline pipeline) {
+		this.jobs = jobs;
+		this.pipeline = pipeline;
+		outputFile = new File("Извещения." + GlobalOptions.FORMAT.getExtension());
+	}
+
+	@Override
+	public void run() {
+		try {
+			final TemplateBundle template = TemplateBundle.getInstance();
+
+			// Подготовка данных всех извещений. Извещения задач, завершившихся
+			// ошибкой или не успевших вовремя, пропускаются и попадают в итоги конвейера
+			final ArrayList<Notice> notices = new ArrayList<>();
+			for (CompletableFuture<Notice> future : pipeline.submit(jobs, AbstractJob::prepare)) {
+				try {
+					notices.add(future.join());
+				} catch (CompletionException | CancellationException ignored) {
+				}
+			}
+
+			if (notices.isEmpty()) {
+				Logger.error("Не удалось подготовить ни одного извещения!");
+				return;
+			}
+
+			if (GlobalOptions.STDOUT) {
+				GlobalOptions.FORMAT.getWriter(template).write(notices, System.out);
+				Logger.verbose(String.format("Извещения (%d) записаны в стандартный вывод", notices.size()));
+			} else {
+				GlobalOptions.FORMAT.getWriter(template).write(notices, new FileOutputStream(outputFile));
+				Logger.verbose(String.format("Извещения (%d) сохранены в файл %s", notices.size(), outputFile.getAbsolutePath()));
+			}
+		} catch (IOException exception) {
+			Logger.error("Ошибка при записи файла!", exception);
+		}
+	}
+}
@@ -5,35 +5,57 @@ import dev.kerastinell.pochtaizv.PochtaDataFetcher;
 import dev.kerastinell.pochtaizv.job.AbstractJob;
 import dev.kerastinell.pochtaizv.values.GlobalOptions;
 
-import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Реализация задачи заполнению извещения, опирающаяся на ввод пользователя
  * и данные об отправлении, полученные от серверов Почты России.
  */
 public class NormalFormJob extends AbstractJob {
+	/**
+	 * Общий для всех задач генератор штрихкодов. Создаётся при первом штрихкоде,
+	 * поэтому без кодов отслеживания классы okapibarcode не загружаются.
+	 */
+	private static class BarcodeHolder {
+		private static final PochtaBarcode POCHTA_BARCODE = new PochtaBarcode();
+	}
+
+	// Время в имени последнего файла извещения без кода отслеживания. Имена таких
+	// файлов должны различаться, даже если задачи созданы в одну миллисекунду (--batch)
+	private static final AtomicLong LAST_TIMESTAMP = new AtomicLong();
+
 	private final PochtaDataFetcher pochtaDataFetcher;
 
-	private final PochtaBarcode pochtaBarcode;
 	private final HashMap<String, String> formData;
 
 	public NormalFormJob(String trackingCode, PochtaDataFetcher pochtaDataFetcher) {
-		super(trackingCode);
+		this(trackingCode, GlobalOptions.INITIAL_FORM_DATA, pochtaDataFetcher);
+	}
+
+	/**
+	 * @param trackingCode Код отслеживания отправления
+	 * @param initialFormData Данные получателя, не зависящие от кода отслеживания
+	 * @param pochtaDataFetcher Источник данных об отправлении
+	 */
+	public NormalFormJob(String trackingCode, Map<String, String> initialFormData, PochtaDataFetcher pochtaDataFetcher) {
+		super(trackingCode, pochtaDataFetcher.getConfig().getFormat(), pochtaDataFetcher.getConfig().getBarcodeFormat());
 		this.pochtaDataFetcher = pochtaDataFetcher;
 
-		pochtaBarcode = new PochtaBarcode();
 		formData = new HashMap<>();
-		formData.putAll(GlobalOptions.INITIAL_FORM_DATA);
+		formData.putAll(initialFormData);
 	}
 
 	@Override
 	protected String getFileName() {
-		String postfix = "(без кода отслеживания @" + System.currentTimeMillis() + ")";
-		if (!trackingCode.isEmpty())
-			postfix = trackingCode;
+		String postfix = trackingCode;
+		if (trackingCode.isEmpty()) {
+			final long now = System.currentTimeMillis();
+			postfix = "(без кода отслеживания @" + LAST_TIMESTAMP.updateAndGet(last -> Math.max(last + 1, now)) + ")";
+		}
 
-		return String.format("Извещение %s.odg", postfix);
+		return String.format("Извещение %s.%s", postfix, format.getExtension());
 	}
 
 	@Override
@@ -44,7 +66,7 @@ public class NormalFormJob extends AbstractJob {
 	}
 
 	@Override
-	protected InputStream getBarcodeImage() {
-		return trackingCode.isEmpty() ? null : pochtaBarcode.generate(trackingCode);
+	protected byte[] getBarcodeImage() {
+		return trackingCode.isEmpty() ? null : BarcodeHolder.POCHTA_BARCODE.generate(trackingCode, barcodeFormat);
 	}
 }
@@ -0,0 +1,157 @@
+package dev.kerastinell.pochtaizv.job.impl;
+
+import dev.kerastinell.pochtaizv.PochtaDataFetcher;
+import dev.kerastinell.pochtaizv.job.AbstractJob;
+import dev.kerastinell.pochtaizv.job.JobPipeline;
+import dev.kerastinell.pochtaizv.job.JobSummary;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задача наблюдения за отправлениями (--watch).
+ *
+ * Периодически запрашивает данные об отправлениях и генерирует извещение,
+ * как только отправление прибывает в место вручения, после чего перестаёт
+ * за ним наблюдать. Работает, пока не прибудут все отправления.
+ *
+ * Отправления проверяются по отдельному расписанию: если история отслеживания
+ * изменилась, отправление в пути и следующая проверка выполняется через
+ * базовый интервал; если не изменилась, интервал удваивается вплоть до
+ * {@link Constants#WATCH_MAX_INTERVAL_MINUTES}. Так давно не двигавшиеся
+ * отправления проверяются реже.
+ *
+ * Наблюдение длится не дольше --watch-max-days и общего срока --timeout, если
+ * он задан. Отправления, не прибывшие к этому времени, попадают в итоги
+ * {@link JobSummary} как превысившие время.
+ */
+public class WatchJob implements Runnable {
+	private final PochtaDataFetcher pochtaDataFetcher;
+	private final JobPipeline pipeline;
+
+	private final long baseIntervalMillis;
+	private final long maxIntervalMillis;
+	// Время, после которого наблюдение прекращается
+	private final long deadline;
+
+	// Наблюдаемые отправления по кодам отслеживания
+	private final LinkedHashMap<String, WatchedCode> watched;
+
+	/**
+	 * Состояние наблюдения за одним отправлением.
+	 */
+	private static class WatchedCode {
+		private long intervalMillis;
+		private long nextPollAt;
+		private Integer historyHash; // null, пока сервер не вернул данные
+	}
+
+	public WatchJob(Collection<String> trackingCodes, PochtaDataFetcher pochtaDataFetcher, JobPipeline pipeline) {
+		this.pochtaDataFetcher = pochtaDataFetcher;
+		this.pipeline = pipeline;
+
+		baseIntervalMillis = TimeUnit.MINUTES.toMillis(Math.max(1, GlobalOptions.WATCH_INTERVAL_MINUTES));
+		maxIntervalMillis = Math.max(baseIntervalMillis, TimeUnit.MINUTES.toMillis(Constants.WATCH_MAX_INTERVAL_MINUTES));
+
+		final long now = System.currentTimeMillis();
+		final long runTimeoutSeconds = pochtaDataFetcher.getConfig().getRunTimeoutSeconds();
+		deadline = Math.min(
+				GlobalOptions.WATCH_MAX_DAYS > 0 ? now + TimeUnit.DAYS.toMillis(GlobalOptions.WATCH_MAX_DAYS) : Long.MAX_VALUE,
+				runTimeoutSeconds > 0 ? now + TimeUnit.SECONDS.toMillis(runTimeoutSeconds) : Long.MAX_VALUE);
+
+		watched = new LinkedHashMap<>();
+		for (String trackingCode : trackingCodes)
+			if (!trackingCode.isEmpty()) {
+				final WatchedCode state = new WatchedCode();
+				state.intervalMillis = baseIntervalMillis;
+				watched.put(trackingCode, state);
+			}
+	}
+
+	@Override
+	public void run() {
+		if (pochtaDataFetcher.isOffline()) {
+			Logger.error("Наблюдение за отправлениями невозможно в оффлайн-режиме!");
+			return;
+		}
+
+		Logger.verbose(String.format("Наблюдение за отправлениями: %d шт.", watched.size()));
+
+		while (!watched.isEmpty()) {
+			if (pipeline.isCancelled()) {
+				Logger.verbose(String.format("Наблюдение за отправлениями прервано, не прибыло: %d шт.", watched.size()));
+				return;
+			}
+
+			final long now = System.currentTimeMillis();
+			if (now >= deadline) {
+				Logger.error(String.format("Наблюдение за отправлениями завершено по сроку, не прибыло: %d шт.", watched.size()));
+				for (String trackingCode : watched.keySet())
+					pipeline.getSummary().add(trackingCode, JobSummary.Outcome.TIMED_OUT);
+				return;
+			}
+
+			// Отправления, которые пора проверить, и время ближайшей следующей проверки
+			final ArrayList<String> due = new ArrayList<>();
+			long nextPollAt = Long.MAX_VALUE;
+			for (Map.Entry<String, WatchedCode> entry : watched.entrySet()) {
+				if (entry.getValue().nextPollAt <= now)
+					due.add(entry.getKey());
+				else nextPollAt = Math.min(nextPollAt, entry.getValue().nextPollAt);
+			}
+
+			if (due.isEmpty()) {
+				try {
+					// Ожидание до следующей проверки прерывается отменой задач (Ctrl-C)
+					pipeline.awaitCancellation(Math.min(nextPollAt, deadline) - now);
+				} catch (InterruptedException exception) {
+					Logger.error("Наблюдение за отправлениями прервано!", exception);
+					return;
+				}
+				continue;
+			}
+
+			pochtaDataFetcher.refreshAsync(due).join();
+
+			final ArrayList<AbstractJob> arrived = new ArrayList<>();
+			for (String trackingCode : due) {
+				if (pochtaDataFetcher.isReadyForPickup(trackingCode)) {
+					Logger.track(trackingCode, "Отправление прибыло в место вручения!");
+					arrived.add(new NormalFormJob(trackingCode, pochtaDataFetcher));
+					watched.remove(trackingCode);
+				} else reschedule(trackingCode, watched.get(trackingCode));
+			}
+
+			if (!arrived.isEmpty()) {
+				pipeline.run(arrived);
+				pochtaDataFetcher.save();
+			}
+		}
+
+		Logger.verbose("Все отправления прибыли, наблюдение завершено");
+	}
+
+	/**
+	 * Назначает следующую проверку отправления в зависимости от того,
+	 * изменилась ли его история отслеживания.
+	 * @param trackingCode Код отслеживания
+	 * @param state Состояние наблюдения
+	 */
+	private void reschedule(String trackingCode, WatchedCode state) {
+		final Integer historyHash = pochtaDataFetcher.getHistoryHash(trackingCode);
+
+		if (historyHash != null && !historyHash.equals(state.historyHash)) {
+			if (state.historyHash != null)
+				Logger.track(trackingCode, "История отслеживания изменилась");
+			state.historyHash = historyHash;
+			state.intervalMillis = baseIntervalMillis;
+		} else state.intervalMillis = Math.min(state.intervalMillis * 2, maxIntervalMillis);
+
+		state.nextPollAt = System.currentTimeMillis() + state.intervalMillis;
+		Logger.track(trackingCode, String.format("Следующая проверка через %d мин.",
+				TimeUnit.MILLISECONDS.toMinutes(state.intervalMillis)));
+	}
+}
@@ -0,0 +1,64 @@
+package dev.kerastinell.pochtaizv.net;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Адаптивное ограничение количества одновременных запросов (AIMD).
+ *
+ * После каждого успешного и достаточно быстрого ответа ограничение плавно
+ * растёт (на единицу за «окно» из ограничения запросов), после ошибки или
+ * медленного ответа - уменьшается вдвое, но не ниже одного запроса.
+ */
+public class AdaptiveConcurrencyLimit {
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+
+	private double limit;
+	private int inFlight;
+
+	/**
+	 * @param maxLimit Наибольшее количество одновременных запросов
+	 * @param latencyThresholdNanos Время ответа, начиная с которого ответ считается медленным, нс
+	 */
+	public AdaptiveConcurrencyLimit(int maxLimit, long latencyThresholdNanos) {
+		this.maxLimit = Math.max(1, maxLimit);
+		this.latencyThresholdNanos = latencyThresholdNanos;
+		limit = this.maxLimit;
+	}
+
+	/**
+	 * Занимает место для запроса, ожидая, пока количество одновременных запросов не станет меньше ограничения.
+	 * @throws InterruptedIOException Если ожидание прервано
+	 */
+	public synchronized void acquire() throws InterruptedIOException {
+		try {
+			while (inFlight >= (int) limit)
+				wait();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Ожидание запроса прервано");
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Освобождает место после завершения запроса и пересчитывает ограничение.
+	 * @param success Запрос завершился успешно
+	 * @param latencyNanos Время выполнения запроса, нс
+	 */
+	public synchronized void release(boolean success, long latencyNanos) {
+		inFlight--;
+		if (success && latencyNanos <= latencyThresholdNanos)
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		else limit = Math.max(1, limit / 2);
+		notifyAll();
+	}
+
+	/**
+	 * Возвращает текущее ограничение.
+	 * @return Наибольшее количество одновременных запросов в данный момент
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+}
@@ -0,0 +1,90 @@
+package dev.kerastinell.pochtaizv.net;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+
+/**
+ * Предохранитель, прекращающий запросы к серверу после серии ошибок.
+ *
+ * После заданного количества ошибок подряд предохранитель размыкается,
+ * и все запросы отклоняются без обращения к серверу. По прошествии паузы
+ * пропускается один пробный запрос: если он успешен, предохранитель
+ * замыкается, иначе снова размыкается на ту же паузу.
+ */
+public class CircuitBreaker {
+	private enum State {
+		CLOSED, // Запросы выполняются
+		OPEN, // Запросы отклоняются
+		HALF_OPEN // Выполняется пробный запрос
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int failures; // Количество ошибок подряд
+	private long openedAt;
+
+	/**
+	 * @param failureThreshold Количество ошибок подряд, после которого предохранитель размыкается
+	 * @param openMillis Пауза до пробного запроса, мс
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Проверяет, можно ли выполнить запрос.
+	 * @return true, если запрос можно выполнить
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+			case OPEN:
+				if (System.currentTimeMillis() - openedAt < openMillis)
+					return false;
+				state = State.HALF_OPEN;
+				return true;
+			case HALF_OPEN:
+				return false; // Пробный запрос уже выполняется
+			case CLOSED:
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Отмечает успешный запрос.
+	 */
+	public synchronized void onSuccess() {
+		if (state != State.CLOSED)
+			Logger.verbose("[CircuitBreaker] Сервер снова отвечает, запросы возобновлены");
+
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	/**
+	 * Отмечает запрос, завершившийся ошибкой.
+	 */
+	public synchronized void onFailure() {
+		failures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+			if (state == State.CLOSED)
+				Logger.verbose(String.format("[CircuitBreaker] Ошибок подряд: %d, запросы к серверу приостановлены на %d с",
+						failures, openMillis / 1000));
+
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Отмечает запрос, прерванный до получения ответа не по вине сервера,
+	 * например прерыванием потока. Если это был пробный запрос, предохранитель
+	 * снова размыкается, но следующий запрос может стать пробным сразу.
+	 */
+	public synchronized void onAbort() {
+		if (state == State.HALF_OPEN)
+			state = State.OPEN;
+	}
+}
@@ -0,0 +1,14 @@
+package dev.kerastinell.pochtaizv.net;
+
+import java.io.IOException;
+
+/**
+ * Запрос отклонён без обращения к серверу, так как {@link CircuitBreaker} разомкнут.
+ */
+public class CircuitOpenException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException() {
+		super("Сервер недоступен, запросы временно приостановлены");
+	}
+}
@@ -0,0 +1,78 @@
+package dev.kerastinell.pochtaizv.net;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничитель частоты запросов по алгоритму «ведро с токенами».
+ *
+ * Токены пополняются с постоянной скоростью до ёмкости ведра, каждый
+ * запрос забирает один токен. Если токенов нет, запрос ожидает пополнения.
+ */
+public class RateLimiter {
+	private final double permitsPerSecond;
+	private final double capacity;
+
+	private double tokens;
+	private long refilledAt; // Время последнего пополнения, нс
+
+	/**
+	 * @param permitsPerSecond Наибольшая устойчивая частота запросов в секунду.
+	 *                         Если не больше нуля, частота не ограничивается
+	 */
+	public RateLimiter(double permitsPerSecond) {
+		this.permitsPerSecond = permitsPerSecond;
+		capacity = Math.max(1, permitsPerSecond);
+		tokens = capacity;
+		refilledAt = System.nanoTime();
+	}
+
+	/**
+	 * Забирает токен, при необходимости ожидая его появления.
+	 * @throws InterruptedIOException Если ожидание прервано
+	 */
+	public void acquire() throws InterruptedIOException {
+		if (permitsPerSecond <= 0)
+			return;
+
+		while (true) {
+			final long waitNanos;
+			synchronized (this) {
+				refill();
+				if (tokens >= 1) {
+					tokens -= 1;
+					return;
+				}
+				waitNanos = (long) ((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+			}
+
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Ожидание запроса прервано");
+			}
+		}
+	}
+
+	/**
+	 * Забирает токен, если он есть, не ожидая пополнения.
+	 * @return true, если токен получен
+	 */
+	public synchronized boolean tryAcquire() {
+		if (permitsPerSecond <= 0)
+			return true;
+
+		refill();
+		if (tokens < 1)
+			return false;
+		tokens -= 1;
+		return true;
+	}
+
+	private void refill() {
+		final long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+		refilledAt = now;
+	}
+}
@@ -0,0 +1,180 @@
+package dev.kerastinell.pochtaizv.net;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Перехватчик запросов OkHttp, бережно обращающийся с сервером.
+ *
+ * Каждый запрос (в том числе повторный) проходит через предохранитель,
+ * ограничитель частоты и адаптивное ограничение одновременных запросов.
+ * Запросы, завершившиеся сетевой ошибкой или ответом 408, 429 или 5xx,
+ * повторяются с экспоненциально растущей паузой со случайным разбросом;
+ * если сервер указал заголовок Retry-After, пауза не короче указанной.
+ *
+ * Все запросы к серверу Почты России только читают данные, поэтому
+ * повторять их безопасно, в том числе POST-запросы отслеживания.
+ */
+public class ResilientInterceptor implements Interceptor {
+	private final RateLimiter rateLimiter;
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+	private final CircuitBreaker circuitBreaker;
+
+	private final int maxRetries;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+
+	// Статистика запросов
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final AtomicLong firstRequestAt = new AtomicLong(); // нс, 0 - запросов не было
+	private final AtomicLong lastResponseAt = new AtomicLong(); // нс
+
+	/**
+	 * @param rateLimiter Ограничитель частоты запросов
+	 * @param concurrencyLimit Ограничение одновременных запросов
+	 * @param circuitBreaker Предохранитель
+	 * @param maxRetries Наибольшее количество повторов одного запроса
+	 * @param baseDelayMillis Пауза перед первым повтором, мс
+	 * @param maxDelayMillis Наибольшая пауза перед повтором, мс
+	 */
+	public ResilientInterceptor(RateLimiter rateLimiter, AdaptiveConcurrencyLimit concurrencyLimit,
+								CircuitBreaker circuitBreaker, int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+		this.rateLimiter = rateLimiter;
+		this.concurrencyLimit = concurrencyLimit;
+		this.circuitBreaker = circuitBreaker;
+		this.maxRetries = maxRetries;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		final Request request = chain.request();
+
+		for (int attempt = 0; ; attempt++) {
+			if (!circuitBreaker.allowRequest())
+				throw new CircuitOpenException();
+
+			// Прерванное ожидание или непредвиденное исключение не должны оставлять
+			// занятое место в ограничении и предохранитель в ожидании пробного запроса
+			boolean acquired = false;
+			boolean reported = false;
+			long startedAt = 0;
+			Response response = null;
+			IOException exception = null;
+			boolean failed;
+			try {
+				rateLimiter.acquire();
+				concurrencyLimit.acquire();
+				acquired = true;
+
+				startedAt = System.nanoTime();
+				firstRequestAt.compareAndSet(0, startedAt);
+				requests.increment();
+
+				try {
+					response = chain.proceed(request);
+				} catch (IOException e) {
+					exception = e;
+				}
+
+				final long finishedAt = System.nanoTime();
+				lastResponseAt.set(finishedAt);
+
+				failed = exception != null || isRetryable(response.code());
+				acquired = false;
+				concurrencyLimit.release(!failed, finishedAt - startedAt);
+				if (failed)
+					circuitBreaker.onFailure();
+				else circuitBreaker.onSuccess();
+				reported = true;
+			} finally {
+				if (acquired)
+					concurrencyLimit.release(false, System.nanoTime() - startedAt);
+				if (!reported)
+					circuitBreaker.onAbort();
+			}
+
+			if (!failed)
+				return response;
+
+			failures.increment();
+
+			// Попытки исчерпаны: ошибка или последний ответ передаются вызывающему коду
+			if (attempt >= maxRetries) {
+				if (exception != null)
+					throw exception;
+				return response;
+			}
+
+			final long delayMillis = getDelayMillis(attempt, response);
+			Logger.verbose(String.format("[ResilientInterceptor] %s, повтор через %d мс",
+					exception != null ? exception.toString() : "Код ответа " + response.code(), delayMillis));
+			IoUtils.closeResponse(response);
+			retries.increment();
+
+			try {
+				TimeUnit.MILLISECONDS.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Ожидание повтора запроса прервано");
+			}
+		}
+	}
+
+	/**
+	 * Вычисляет паузу перед повтором запроса: случайную величину от нуля
+	 * до экспоненциально растущего предела, но не меньше Retry-After.
+	 * @param attempt Номер неудачной попытки, начиная с нуля
+	 * @param response Ответ сервера или null, если запрос завершился ошибкой
+	 * @return Пауза в миллисекундах
+	 */
+	private long getDelayMillis(int attempt, Response response) {
+		final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+		long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+
+		final String retryAfter = response == null ? null : response.header("Retry-After");
+		if (retryAfter != null) try {
+			delay = Math.max(delay, Math.min(maxDelayMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()))));
+		} catch (NumberFormatException ignored) {
+			// Retry-After в виде даты не поддерживается
+		}
+
+		return delay;
+	}
+
+	/**
+	 * Проверяет, стоит ли повторить запрос, получивший ответ с указанным кодом.
+	 * @param code Код ответа
+	 * @return true, если сервер перегружен или временно недоступен
+	 */
+	private static boolean isRetryable(int code) {
+		return code == 408 || code == 429 || code >= 500;
+	}
+
+	/**
+	 * Возвращает сводку о выполненных запросах.
+	 * @return Строка со статистикой или null, если запросов не было
+	 */
+	public String getSummary() {
+		final long first = firstRequestAt.get();
+		if (first == 0)
+			return null;
+
+		final double seconds = Math.max(1, lastResponseAt.get() - first) / (double) TimeUnit.SECONDS.toNanos(1);
+		return String.format("Запросов: %d (повторов: %d, ошибок: %d) за %.1f с, %.2f запросов/с, ограничение одновременных запросов: %d",
+				requests.sum(), retries.sum(), failures.sum(), seconds, requests.sum() / seconds, concurrencyLimit.getLimit());
+	}
+}
@@ -0,0 +1,76 @@
+package dev.kerastinell.pochtaizv.server;
+
+import dev.kerastinell.pochtaizv.job.FormRecord;
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
+import dev.kerastinell.pochtaizv.util.json.JsonReader;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static dev.kerastinell.pochtaizv.util.TextUtils.is;
+
+/**
+ * Запрос к серверу генерации извещений: данные извещений {@link FormRecord}
+ * и параметры документа.
+ */
+class NoticeRequest {
+	private final FormRecord record;
+	private final DocumentFormat format;
+	private final Path output; // null - документ возвращается в ответе
+
+	private NoticeRequest(FormRecord record, DocumentFormat format, Path output) {
+		this.record = record;
+		this.format = format;
+		this.output = output;
+	}
+
+	/**
+	 * Считывает запрос из JSON-объекта.
+	 * @param reader Тело запроса
+	 * @return Запрос
+	 * @throws IOException Если тело запроса - не JSON-объект
+	 * @throws IllegalArgumentException Если значение поля недопустимо
+	 */
+	static NoticeRequest read(Reader reader) throws IOException {
+		final FormRecord.Builder record = new FormRecord.Builder();
+		DocumentFormat format = GlobalOptions.FORMAT;
+		Path output = null;
+
+		final JsonReader json = new JsonReader(reader);
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+
+			if (is(name, "format")) {
+				final String value = json.nextString();
+				format = DocumentFormat.fromCli(value);
+				if (format == null)
+					throw new IllegalArgumentException("Неизвестный формат документа: " + value);
+			} else if (is(name, "output")) {
+				final String value = json.nextString();
+				output = value == null ? null : Paths.get(value);
+			} else record.read(name, json);
+		}
+		json.endObject();
+
+		final NoticeRequest request = new NoticeRequest(record.build(), format, output);
+		if (request.record.getTrackingCodes().isEmpty())
+			throw new IllegalArgumentException("Не указаны коды отслеживания");
+		return request;
+	}
+
+	FormRecord getRecord() {
+		return record;
+	}
+
+	DocumentFormat getFormat() {
+		return format;
+	}
+
+	Path getOutput() {
+		return output;
+	}
+}
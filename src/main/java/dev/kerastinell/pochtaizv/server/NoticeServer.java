@@ -0,0 +1,262 @@
+package dev.kerastinell.pochtaizv.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.kerastinell.pochtaizv.PochtaDataFetcher;
+import dev.kerastinell.pochtaizv.job.AbstractJob;
+import dev.kerastinell.pochtaizv.job.JobPipeline;
+import dev.kerastinell.pochtaizv.job.PreparedNotices;
+import dev.kerastinell.pochtaizv.job.impl.NormalFormJob;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.template.DocumentWriter;
+import dev.kerastinell.pochtaizv.template.Notice;
+import dev.kerastinell.pochtaizv.template.TemplateBundle;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Локальный сервер генерации извещений (--serve).
+ *
+ * Работает до завершения программы и генерирует извещения по запросам. Шаблон,
+ * генератор штрихкодов, сессия и кэш данных об отправлениях загружаются один раз
+ * и используются всеми запросами, а данные об отправлениях загружаются тем же
+ * конвейером {@link JobPipeline}, что и при обычном запуске. Данные получателя,
+ * указанные при запуске сервера, используются по-умолчанию.
+ *
+ * POST /notice - JSON-объект с кодами отслеживания (tracks: массив или строка
+ * через точку с запятой), данными получателя и датами (имена полей совпадают
+ * с параметрами командной строки), форматом документа (format) и, при
+ * необходимости, путём к файлу (output). В ответ возвращается документ, в котором
+ * каждое извещение занимает отдельную страницу, либо, если указан output,
+ * документ записывается в файл и возвращается JSON с путём к нему.
+ * Коды, извещения для которых подготовить не удалось, перечисляются в заголовке
+ * X-Failed-Tracks, а коды, данные о которых не удалось получить от сервера и
+ * извещения для которых заполнены из кэша или значениями по-умолчанию, - в
+ * заголовке X-Degraded-Tracks.
+ *
+ * Сервер доступен любой программе и любой странице в браузере пользователя,
+ * поэтому output - только относительный путь внутри директории, заданной при
+ * запуске (--serve-dir), тело запроса принимается только с типом application/json,
+ * которого страница не может отправить без согласия сервера, а запросы с
+ * заголовком Origin, то есть отправленные браузером со страницы, отклоняются.
+ *
+ * GET /health - проверка работы сервера.
+ */
+public class NoticeServer implements Runnable {
+	private static final String NOTICE_PATH = "/notice";
+	private static final String HEALTH_PATH = "/health";
+
+	private final PochtaDataFetcher pochtaDataFetcher;
+	private final JobPipeline pipeline;
+	private final int port;
+	// Директория, внутри которой записываются документы с указанным output
+	private final Path outputDir;
+
+	/**
+	 * @param pochtaDataFetcher Источник данных об отправлениях
+	 * @param pipeline Конвейер задач
+	 * @param port Порт сервера
+	 * @param outputDir Директория, внутри которой записываются документы с указанным output
+	 */
+	public NoticeServer(PochtaDataFetcher pochtaDataFetcher, JobPipeline pipeline, int port, Path outputDir) {
+		this.pochtaDataFetcher = pochtaDataFetcher;
+		this.pipeline = pipeline;
+		this.port = port;
+		this.outputDir = outputDir.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Запускает сервер. Сервер работает до завершения программы, после чего
+	 * завершает работу конвейера и сохраняет кэш и сессию.
+	 */
+	@Override
+	public void run() {
+		final HttpServer server;
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException exception) {
+			Logger.error("Ошибка при запуске сервера!", exception);
+			pipeline.shutdown();
+			pochtaDataFetcher.finish();
+			return;
+		}
+
+		server.createContext(NOTICE_PATH, exchange -> handle(exchange, "POST", this::handleNotice));
+		server.createContext(HEALTH_PATH, exchange -> handle(exchange, "GET",
+				ignored -> reply(exchange, 200, "text/plain; charset=utf-8", "ok")));
+		server.setExecutor(Executors.newCachedThreadPool());
+
+		// При завершении программы (Ctrl-C) запросы больше не принимаются,
+		// а задачи выполняющихся запросов отменяются
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(0);
+			pipeline.cancel();
+			pipeline.shutdown();
+			pochtaDataFetcher.finish();
+			pipeline.getSummary().print();
+			Stats.finish(pipeline.getSummary());
+			// Обработчик логгера мог завершиться раньше
+			Logger.flush();
+		}, "NoticeServer Shutdown Thread"));
+
+		server.start();
+		Logger.verbose(String.format("Сервер генерации извещений запущен: http://127.0.0.1:%d%s",
+				server.getAddress().getPort(), NOTICE_PATH));
+	}
+
+	private interface Handler {
+		void handle(HttpExchange exchange) throws IOException;
+	}
+
+	/**
+	 * Выполняет запрос, если метод запроса совпадает с ожидаемым.
+	 */
+	private static void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals(method)) {
+				exchange.getResponseHeaders().add("Allow", method);
+				reply(exchange, 405, "text/plain; charset=utf-8", "");
+				return;
+			}
+
+			handler.handle(exchange);
+		} catch (IOException | RuntimeException exception) {
+			Logger.error("Ошибка при обработке запроса " + exchange.getRequestURI(), exception);
+			reply(exchange, 500, "text/plain; charset=utf-8", "");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Генерирует документ с извещениями по запросу.
+	 */
+	private void handleNotice(HttpExchange exchange) throws IOException {
+		if (exchange.getRequestHeaders().containsKey("Origin")) {
+			reply(exchange, 403, "text/plain; charset=utf-8", "Запросы со страниц в браузере не принимаются");
+			return;
+		}
+
+		final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (contentType == null || !contentType.split(";", 2)[0].trim().equalsIgnoreCase("application/json")) {
+			reply(exchange, 415, "text/plain; charset=utf-8", "Тело запроса должно быть в формате application/json");
+			return;
+		}
+
+		final byte[] body = readBody(exchange.getRequestBody());
+		if (body == null) {
+			reply(exchange, 413, "text/plain; charset=utf-8", "Слишком большой запрос");
+			return;
+		}
+
+		final NoticeRequest request;
+		try {
+			request = NoticeRequest.read(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+		} catch (IOException | IllegalArgumentException exception) {
+			reply(exchange, 400, "text/plain; charset=utf-8", exception.getMessage());
+			return;
+		}
+
+		final Path outputFile = request.getOutput() == null ? null : resolveOutput(request.getOutput());
+		if (request.getOutput() != null && outputFile == null) {
+			reply(exchange, 400, "text/plain; charset=utf-8",
+					"Путь output должен быть относительным и не выходить за пределы директории " + outputDir);
+			return;
+		}
+
+		final List<String> trackingCodes = request.getRecord().getTrackingCodes();
+		final Map<String, String> formData = request.getRecord().getFormData(GlobalOptions.INITIAL_FORM_DATA);
+		final ArrayList<AbstractJob> jobs = new ArrayList<>();
+		for (String trackingCode : trackingCodes)
+			jobs.add(new NormalFormJob(trackingCode, formData, pochtaDataFetcher));
+
+		final PreparedNotices prepared = pipeline.prepare(jobs);
+		final List<Notice> notices = prepared.getNotices();
+		pochtaDataFetcher.save();
+
+		if (notices.isEmpty()) {
+			reply(exchange, 500, "text/plain; charset=utf-8", "Не удалось подготовить ни одного извещения");
+			return;
+		}
+		if (!prepared.getFailed().isEmpty())
+			exchange.getResponseHeaders().add("X-Failed-Tracks", String.join(";", prepared.getFailed()));
+		if (!prepared.getDegraded().isEmpty())
+			exchange.getResponseHeaders().add("X-Degraded-Tracks", String.join(";", prepared.getDegraded()));
+
+		final DocumentWriter writer = request.getFormat().getWriter(TemplateBundle.getInstance());
+		if (outputFile != null) {
+			try (OutputStream output = Files.newOutputStream(outputFile)) {
+				writer.write(notices, output);
+			}
+			Logger.verbose(String.format("Извещения (%d) сохранены в файл %s", notices.size(), outputFile));
+
+			reply(exchange, 200, "application/json; charset=utf-8", String.format("{\"output\":\"%s\",\"notices\":%d}",
+					outputFile.toString().replace("\\", "\\\\").replace("\"", "\\\""), notices.size()));
+			return;
+		}
+
+		final ByteArrayOutputStream document = new ByteArrayOutputStream();
+		writer.write(notices, document);
+
+		final String fileName = "Извещения." + request.getFormat().getExtension();
+		exchange.getResponseHeaders().add("Content-Disposition",
+				"attachment; filename*=UTF-8''" + URLEncoder.encode(fileName, "UTF-8"));
+		reply(exchange, 200, request.getFormat().getMediaType(), document.toByteArray());
+	}
+
+	/**
+	 * Определяет файл, в который записывается документ.
+	 * @param output Путь из запроса
+	 * @return Файл внутри {@link #outputDir} или null, если путь абсолютный или выходит за её пределы
+	 */
+	private Path resolveOutput(Path output) {
+		if (output.isAbsolute() || output.getRoot() != null)
+			return null;
+
+		final Path outputFile = outputDir.resolve(output).normalize();
+		return outputFile.startsWith(outputDir) && !outputFile.equals(outputDir) ? outputFile : null;
+	}
+
+	/**
+	 * Считывает тело запроса, если оно не превышает {@link Constants#SERVE_MAX_REQUEST_BYTES}.
+	 * @return Тело запроса или null, если оно слишком большое
+	 */
+	private static byte[] readBody(InputStream input) throws IOException {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+			if (body.size() > Constants.SERVE_MAX_REQUEST_BYTES)
+				return null;
+		}
+		return body.toByteArray();
+	}
+
+	private static void reply(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+		reply(exchange, code, contentType, body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void reply(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+		Logger.verbose(String.format("[NoticeServer] %s %s -> %d", exchange.getRequestMethod(), exchange.getRequestURI(), code));
+
+		exchange.getResponseHeaders().add("Content-Type", contentType);
+		exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+		if (body.length > 0) try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package dev.kerastinell.pochtaizv.standin;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Директория с записанными ответами сервера Почты России (fixture-файлами).
+ *
+ * Структура директории:
+ * init.html - страница отслеживания, из которой извлекается ссылка для запросов;
+ * tracking/КОД.json - элемент массива response с данными об отправлении КОД.
+ *
+ * Данные хранятся по отдельным кодам, поэтому {@link StandInServer} может
+ * собрать ответ на запрос с любым набором кодов и любым размером пачки.
+ */
+public class FixtureStore {
+	private static final String INIT_FILE = "init.html";
+	private static final String TRACKING_DIR = "tracking";
+
+	private final Path directory;
+
+	public FixtureStore(Path directory) {
+		this.directory = directory;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Записывает страницу отслеживания.
+	 * @param html Текст страницы
+	 */
+	public void saveInitPage(String html) {
+		write(directory.resolve(INIT_FILE), html);
+	}
+
+	/**
+	 * Записывает данные об отправлении.
+	 * @param trackingCode Код отслеживания
+	 * @param json Элемент массива response
+	 */
+	public void saveTracking(String trackingCode, String json) {
+		write(getTrackingPath(trackingCode), json);
+	}
+
+	/**
+	 * @return Текст страницы отслеживания или null, если она не записана
+	 */
+	public String loadInitPage() {
+		return read(directory.resolve(INIT_FILE));
+	}
+
+	/**
+	 * @param trackingCode Код отслеживания
+	 * @return Элемент массива response или null, если данные об отправлении не записаны
+	 */
+	public String loadTracking(String trackingCode) {
+		return read(getTrackingPath(trackingCode));
+	}
+
+	private Path getTrackingPath(String trackingCode) {
+		// Код отслеживания не должен выводить за пределы директории
+		return directory.resolve(TRACKING_DIR).resolve(trackingCode.replaceAll("[^\\p{Alnum}_-]", "_") + ".json");
+	}
+
+	private static void write(Path path, String text) {
+		try {
+			Files.createDirectories(path.toAbsolutePath().getParent());
+			Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException exception) {
+			Logger.error("Ошибка при записи файла " + path, exception);
+		}
+	}
+
+	private static String read(Path path) {
+		if (!Files.isRegularFile(path))
+			return null;
+
+		try {
+			return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+		} catch (IOException exception) {
+			Logger.error("Ошибка при чтении файла " + path, exception);
+			return null;
+		}
+	}
+}
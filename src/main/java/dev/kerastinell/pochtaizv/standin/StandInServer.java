@@ -0,0 +1,257 @@
+package dev.kerastinell.pochtaizv.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.kerastinell.pochtaizv.net.RateLimiter;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Локальный сервер, подменяющий сервер Почты России.
+ *
+ * Отвечает на запросы данными из {@link FixtureStore}, записанными ранее
+ * с параметром --record. Для отправлений, данных о которых нет, возвращается
+ * элемент с пустой историей отслеживания. Позволяет воспроизводимо проверять
+ * и настраивать загрузку данных без обращения к настоящему серверу, в том
+ * числе при искусственных задержках, ошибках и ограничении частоты запросов.
+ *
+ * Запуск: pochtaizv --stand-in=ДИРЕКТОРИЯ [--port=8765] [--latency=0]
+ * [--error-rate=0] [--throttle=0], затем pochtaizv --api-url=http://127.0.0.1:8765 ...
+ */
+public class StandInServer {
+	private static final String TRACKING_PATH = "/api/tracking";
+	private static final Pattern TRACKING_URL_PATTERN = Pattern.compile("getTrackingsByBarcodesUrl:\"[^\"]*\"");
+	private static final Pattern BARCODES_PART_PATTERN = Pattern.compile(
+			"name=\"barcodes\"\\r\\n(?:[^\\r\\n]+\\r\\n)*\\r\\n(.*?)\\r\\n--", Pattern.DOTALL);
+
+	private final FixtureStore fixtures;
+	private final int port;
+	private final long latencyMillis; // Средняя задержка ответа
+	private final double errorRate; // Доля ответов 503
+	private final double requestsPerSecond;
+	private final RateLimiter throttle; // Запросы сверх частоты получают ответ 429
+
+	private String trackingUrl;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param fixtures Записанные ответы сервера
+	 * @param port Порт
+	 * @param latencyMillis Средняя задержка ответа в миллисекундах; фактическая задержка случайна, от половины до полутора средних
+	 * @param errorRate Доля запросов, на которые отвечается ошибкой 503, от 0 до 1
+	 * @param requestsPerSecond Наибольшая частота запросов в секунду, 0 - без ограничения
+	 */
+	public StandInServer(FixtureStore fixtures, int port, long latencyMillis, double errorRate, double requestsPerSecond) {
+		this.fixtures = fixtures;
+		this.port = port;
+		this.latencyMillis = latencyMillis;
+		this.errorRate = errorRate;
+		this.requestsPerSecond = requestsPerSecond;
+		throttle = new RateLimiter(requestsPerSecond);
+	}
+
+	/**
+	 * Создаёт сервер по параметрам командной строки.
+	 * @param args Параметры командной строки
+	 * @return Сервер или null, если параметр --stand-in не указан
+	 */
+	public static StandInServer fromArgs(String[] args) {
+		String directory = null;
+		int port = Constants.STAND_IN_DEFAULT_PORT;
+		long latency = 0;
+		double errorRate = 0, throttle = 0;
+
+		for (String arg : args) {
+			if (!(arg.startsWith("--") && arg.contains("=")))
+				continue;
+
+			final String value = arg.substring(arg.indexOf("=") + 1);
+			try {
+				switch (arg.substring(2, arg.indexOf("="))) {
+					case "stand-in":
+						directory = value;
+						break;
+					case "port":
+						port = Integer.parseInt(value);
+						break;
+					case "latency":
+						latency = Long.parseLong(value);
+						break;
+					case "error-rate":
+						errorRate = Double.parseDouble(value);
+						break;
+					case "throttle":
+						throttle = Double.parseDouble(value);
+						break;
+				}
+			} catch (NumberFormatException exception) {
+				Logger.verbose("Неверное значение параметра: " + arg);
+			}
+		}
+
+		return directory == null ? null :
+				new StandInServer(new FixtureStore(Paths.get(directory)), port, latency, errorRate, throttle);
+	}
+
+	/**
+	 * Запускает сервер. Сервер работает до завершения программы или вызова {@link #stop()}.
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		trackingUrl = String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), TRACKING_PATH);
+
+		executor = Executors.newCachedThreadPool();
+		server.createContext(Constants.API_INIT_PATH, exchange -> handle(exchange, this::handleInit));
+		server.createContext(TRACKING_PATH, exchange -> handle(exchange, this::handleTracking));
+		server.setExecutor(executor);
+		server.start();
+
+		Logger.verbose(String.format("Сервер запущен: http://127.0.0.1:%d, данные из %s",
+				server.getAddress().getPort(), fixtures.getDirectory().toAbsolutePath()));
+		Logger.verbose(String.format("Задержка: %d мс, доля ошибок: %.2f, запросов в секунду: %s",
+				latencyMillis, errorRate, requestsPerSecond > 0 ? String.valueOf(requestsPerSecond) : "без ограничения"));
+	}
+
+	/**
+	 * Возвращает порт запущенного сервера. Если при создании указан порт 0,
+	 * это свободный порт, выбранный при запуске.
+	 * @return Порт
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Останавливает сервер, например по завершении бенчмарка.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private interface Handler {
+		/**
+		 * @return Тело ответа с кодом 200
+		 */
+		String respond(HttpExchange exchange) throws IOException;
+	}
+
+	/**
+	 * Выполняет запрос с искусственными ограничением частоты, задержкой и ошибками.
+	 */
+	private void handle(HttpExchange exchange, Handler handler) throws IOException {
+		try {
+			if (!throttle.tryAcquire()) {
+				exchange.getResponseHeaders().add("Retry-After", "1");
+				reply(exchange, 429, "");
+				return;
+			}
+
+			if (latencyMillis > 0)
+				TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(latencyMillis / 2, latencyMillis * 3 / 2 + 1));
+
+			if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+				reply(exchange, 503, "");
+				return;
+			}
+
+			reply(exchange, 200, handler.respond(exchange));
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			reply(exchange, 503, "");
+		} catch (IOException | RuntimeException exception) {
+			Logger.error("Ошибка при обработке запроса " + exchange.getRequestURI(), exception);
+			reply(exchange, 500, "");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void reply(HttpExchange exchange, int code, String body) throws IOException {
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		Logger.verbose(String.format("[StandInServer] %s %s -> %d", exchange.getRequestMethod(), exchange.getRequestURI(), code));
+
+		exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Отдаёт страницу отслеживания, указывающую на этот сервер, и устанавливает cookie сессии.
+	 */
+	private String handleInit(HttpExchange exchange) {
+		exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+		exchange.getResponseHeaders().add("Set-Cookie", "stand-in-session=" + UUID.randomUUID() + "; Path=/");
+
+		final String link = "getTrackingsByBarcodesUrl:\"" + trackingUrl + "\"";
+		final String html = fixtures.loadInitPage();
+		if (html == null || !TRACKING_URL_PATTERN.matcher(html).find())
+			return "<html><script>window.config={" + link + "}</script></html>";
+		return TRACKING_URL_PATTERN.matcher(html).replaceFirst(Matcher.quoteReplacement(link));
+	}
+
+	/**
+	 * Собирает ответ на запрос отслеживания из записанных данных по каждому коду.
+	 */
+	private String handleTracking(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+
+		final StringBuilder json = new StringBuilder("{\"response\":[");
+		final List<String> trackingCodes = getTrackingCodes(exchange);
+		for (int i = 0; i < trackingCodes.size(); i++) {
+			if (i > 0)
+				json.append(',');
+
+			final String trackingCode = trackingCodes.get(i);
+			final String recorded = fixtures.loadTracking(trackingCode);
+			if (recorded != null)
+				json.append(recorded);
+			else json.append("{\"trackingItem\":{\"barcode\":\"")
+					.append(trackingCode.replace("\\", "\\\\").replace("\"", "\\\""))
+					.append("\",\"trackingHistoryItemList\":[]}}");
+		}
+
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * Извлекает коды отслеживания из поля barcodes запроса (multipart или urlencoded).
+	 */
+	private static List<String> getTrackingCodes(HttpExchange exchange) throws IOException {
+		final String body = new String(IoUtils.readBytes(exchange.getRequestBody()), StandardCharsets.UTF_8);
+
+		String barcodes = "";
+		final Matcher multipart = BARCODES_PART_PATTERN.matcher(body);
+		if (multipart.find())
+			barcodes = multipart.group(1);
+		else for (String parameter : body.split("&"))
+			if (parameter.startsWith("barcodes="))
+				barcodes = URLDecoder.decode(parameter.substring("barcodes=".length()), "UTF-8");
+
+		final ArrayList<String> trackingCodes = new ArrayList<>();
+		for (String trackingCode : barcodes.split(Pattern.quote(Constants.API_BATCH_SEPARATOR)))
+			if (!trackingCode.trim().isEmpty())
+				trackingCodes.add(trackingCode.trim());
+		return trackingCodes;
+	}
+}
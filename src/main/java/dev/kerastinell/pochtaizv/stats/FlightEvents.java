@@ -0,0 +1,27 @@
+package dev.kerastinell.pochtaizv.stats;
+
+/**
+ * События JDK Flight Recorder для этапов генерации извещений.
+ *
+ * Реализация для Java 8: события не записываются. На Java 21 и новее
+ * её заменяет реализация из META-INF/versions/21 многоверсионного jar-файла,
+ * записывающая событие dev.kerastinell.pochtaizv.Stage для каждого этапа.
+ */
+public class FlightEvents {
+	/**
+	 * Начинает событие этапа, если запись событий включена.
+	 * @return Событие или null, если событие не записывается
+	 */
+	public static Object begin() {
+		return null;
+	}
+
+	/**
+	 * Завершает и записывает событие этапа.
+	 * @param event Событие, полученное от {@link #begin()}
+	 * @param stage Этап
+	 * @param trackingCodes Коды отслеживания, к которым относится этап, через запятую
+	 */
+	public static void commit(Object event, Stage stage, String trackingCodes) {
+	}
+}
@@ -0,0 +1,107 @@
+package dev.kerastinell.pochtaizv.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма длительностей без блокировок.
+ *
+ * Длительности округляются до микросекунд и раскладываются по корзинам:
+ * до {@link #SUB_BUCKETS} мкс - по одной корзине на значение, дальше каждый
+ * интервал от 2^n до 2^(n+1) делится на {@link #SUB_BUCKETS} равных корзин.
+ * Поэтому перцентили вычисляются с относительной погрешностью не больше 1/8,
+ * а размер гистограммы не зависит от количества значений.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Корзины для значений до 2^63 мкс
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Добавляет длительность в гистограмму.
+	 * @param nanos Длительность в наносекундах
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * @return Количество значений
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return Сумма всех значений в наносекундах
+	 */
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	/**
+	 * @return Наибольшее значение в наносекундах
+	 */
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * Возвращает перцентиль: значение, не меньше которого p-я доля всех значений.
+	 * @param p Доля от 0 до 1, например 0.95
+	 * @return Верхняя граница корзины перцентиля в наносекундах, не больше наибольшего значения.
+	 *         0, если значений нет
+	 */
+	public long getPercentileNanos(double p) {
+		final long total = count.get();
+		if (total == 0)
+			return 0;
+
+		final long rank = Math.max(1, (long) Math.ceil(p * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(TimeUnit.MICROSECONDS.toNanos(upperBound(i)), maxNanos.get());
+		}
+		// Значения добавлены после подсчёта count
+		return maxNanos.get();
+	}
+
+	/**
+	 * @param micros Значение в микросекундах
+	 * @return Номер корзины значения
+	 */
+	private static int bucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @param bucket Номер корзины
+	 * @return Наибольшее значение корзины в микросекундах
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
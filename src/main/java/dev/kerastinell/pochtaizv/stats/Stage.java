@@ -0,0 +1,36 @@
+package dev.kerastinell.pochtaizv.stats;
+
+/**
+ * Этапы генерации извещений, время которых измеряется {@link Stats}.
+ */
+public enum Stage {
+	// Ожидание завершения инициализации сессии сервера Почты России
+	INIT_WAIT("Ожидание инициализации"),
+	// Запрос страницы сервера и извлечение ссылки для отслеживания
+	SESSION("Инициализация сессии"),
+	// Запрос данных о пачке отправлений: от отправки запроса до получения ответа
+	FETCH("Запрос к серверу"),
+	// Разбор ответа сервера о пачке отправлений
+	PARSE("Разбор ответа"),
+	// Генерация изображения штрихкода
+	BARCODE("Штрихкод"),
+	// Заполнение шаблона данными одного извещения
+	FILL("Заполнение шаблона"),
+	// Запись документа целиком, в том числе ZIP-архива ODG
+	WRITE("Запись документа"),
+	// Задача целиком: от передачи в конвейер до завершения
+	JOB("Задача");
+
+	private final String description;
+
+	Stage(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * @return Название этапа для вывода пользователю
+	 */
+	public String getDescription() {
+		return description;
+	}
+}
@@ -0,0 +1,292 @@
+package dev.kerastinell.pochtaizv.stats;
+
+import dev.kerastinell.pochtaizv.job.JobSummary;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.values.Constants;
+import dev.kerastinell.pochtaizv.values.GlobalOptions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Измерение времени этапов генерации извещений.
+ *
+ * Этап отмечается парой {@link #start(Stage, String)} и {@link Span#end()}.
+ * Если измерение включено методом {@link #enable()} (--stats, --stats-json),
+ * длительность этапа добавляется в гистограмму этапа {@link LatencyHistogram}
+ * и в длительности этапов каждого кода отслеживания, задача которого ещё
+ * выполняется. По завершении задачи её длительности сохраняются, только если
+ * она в числе {@link Constants#STATS_SLOWEST_CODES} самых долгих, поэтому расход
+ * памяти не зависит от количества извещений. Независимо от этого на Java 21
+ * и новее для этапа записывается событие JDK Flight Recorder, см. {@link FlightEvents}.
+ */
+public class Stats {
+	private static final Span NO_SPAN = new Span(null, Collections.emptyList(), 0, null);
+
+	private static volatile boolean enabled;
+	private static volatile long enabledAt;
+
+	private static final EnumMap<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+	// Длительности этапов выполняющихся задач по кодам отслеживания
+	private static final ConcurrentHashMap<String, CodeTimings> running = new ConcurrentHashMap<>();
+	// Самые долгие завершённые задачи, в начале - самая быстрая из них
+	private static final PriorityQueue<CodeTimings> slowest =
+			new PriorityQueue<>(Comparator.comparingLong(timings -> timings.nanos[Stage.JOB.ordinal()]));
+
+	static {
+		for (Stage stage : Stage.values())
+			histograms.put(stage, new LatencyHistogram());
+	}
+
+	/**
+	 * Выполняемый этап.
+	 */
+	public static class Span {
+		private final Stage stage;
+		private final Collection<String> trackingCodes;
+		private final long startNanos;
+		private final Object event;
+
+		private Span(Stage stage, Collection<String> trackingCodes, long startNanos, Object event) {
+			this.stage = stage;
+			this.trackingCodes = trackingCodes;
+			this.startNanos = startNanos;
+			this.event = event;
+		}
+
+		/**
+		 * Завершает этап и запоминает его длительность.
+		 */
+		public void end() {
+			if (this == NO_SPAN)
+				return;
+
+			final long nanos = System.nanoTime() - startNanos;
+			FlightEvents.commit(event, stage, String.join(",", trackingCodes));
+			if (enabled)
+				record(stage, trackingCodes, nanos);
+		}
+	}
+
+	/**
+	 * Длительности этапов одного кода отслеживания.
+	 */
+	private static class CodeTimings {
+		private final String trackingCode;
+		private final long[] nanos = new long[Stage.values().length];
+		// Количество выполняющихся задач с этим кодом
+		private int jobs;
+
+		private CodeTimings(String trackingCode) {
+			this.trackingCode = trackingCode;
+		}
+	}
+
+	/**
+	 * Включает измерение длительности этапов.
+	 */
+	public static void enable() {
+		enabledAt = System.nanoTime();
+		enabled = true;
+	}
+
+	/**
+	 * @return true, если длительности этапов измеряются
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Начинает этап, относящийся к одному коду отслеживания.
+	 * @param stage Этап
+	 * @param trackingCode Код отслеживания или пустая строка, если этап не относится к коду
+	 * @return Выполняемый этап
+	 */
+	public static Span start(Stage stage, String trackingCode) {
+		return start(stage, trackingCode.isEmpty() ? Collections.emptyList() : Collections.singletonList(trackingCode));
+	}
+
+	/**
+	 * Начинает этап, относящийся к нескольким кодам отслеживания, например
+	 * запрос данных о пачке отправлений. Длительность такого этапа учитывается
+	 * в гистограмме один раз, а в длительностях этапов - у каждого кода.
+	 * @param stage Этап
+	 * @param trackingCodes Коды отслеживания
+	 * @return Выполняемый этап
+	 */
+	public static Span start(Stage stage, Collection<String> trackingCodes) {
+		final Object event = FlightEvents.begin();
+		if (!enabled && event == null)
+			return NO_SPAN;
+
+		if (enabled && stage == Stage.JOB)
+			for (String trackingCode : trackingCodes)
+				running.compute(trackingCode, (key, timings) -> {
+					if (timings == null)
+						timings = new CodeTimings(key);
+					timings.jobs++;
+					return timings;
+				});
+
+		return new Span(stage, trackingCodes, System.nanoTime(), event);
+	}
+
+	/**
+	 * Запоминает длительность завершённого этапа.
+	 */
+	private static void record(Stage stage, Collection<String> trackingCodes, long nanos) {
+		histograms.get(stage).record(nanos);
+
+		for (String trackingCode : trackingCodes)
+			running.computeIfPresent(trackingCode, (key, timings) -> {
+				timings.nanos[stage.ordinal()] += nanos;
+				if (stage != Stage.JOB || --timings.jobs > 0)
+					return timings;
+
+				// Все задачи с этим кодом завершены
+				synchronized (slowest) {
+					slowest.add(timings);
+					if (slowest.size() > Constants.STATS_SLOWEST_CODES)
+						slowest.poll();
+				}
+				return null;
+			});
+	}
+
+	/**
+	 * @param stage Этап
+	 * @return Гистограмма длительностей этапа
+	 */
+	public static LatencyHistogram getHistogram(Stage stage) {
+		return histograms.get(stage);
+	}
+
+	/**
+	 * Выводит время этапов (--stats) и записывает отчёт (--stats-json),
+	 * если пользователь этого потребовал.
+	 * @param summary Итоги выполнения задач
+	 */
+	public static void finish(JobSummary summary) {
+		if (!enabled)
+			return;
+
+		if (GlobalOptions.STATS)
+			print();
+
+		if (GlobalOptions.STATS_REPORT != null) {
+			try {
+				writeReport(GlobalOptions.STATS_REPORT, summary);
+				Logger.verbose("Отчёт о времени этапов сохранён в файл " + GlobalOptions.STATS_REPORT.toAbsolutePath());
+			} catch (IOException exception) {
+				Logger.error("Ошибка при записи отчёта о времени этапов!", exception);
+			}
+		}
+	}
+
+	/**
+	 * Выводит количество, перцентили и наибольшую длительность каждого этапа,
+	 * а также длительности этапов самых долгих задач.
+	 */
+	public static void print() {
+		final StringBuilder text = new StringBuilder(String.format("Время этапов, мс:%n%-24s %8s %10s %10s %10s %10s%n",
+				"", "кол-во", "p50", "p95", "p99", "макс"));
+		for (Stage stage : Stage.values()) {
+			final LatencyHistogram histogram = histograms.get(stage);
+			if (histogram.getCount() == 0)
+				continue;
+
+			text.append(String.format(Locale.ROOT, "%-24s %8d %10.1f %10.1f %10.1f %10.1f%n",
+					stage.getDescription(), histogram.getCount(),
+					millis(histogram.getPercentileNanos(0.5)), millis(histogram.getPercentileNanos(0.95)),
+					millis(histogram.getPercentileNanos(0.99)), millis(histogram.getMaxNanos())));
+		}
+
+		final List<CodeTimings> codes = getSlowest();
+		if (!codes.isEmpty()) {
+			text.append(String.format("Самые долгие задачи, мс:%n"));
+			for (CodeTimings timings : codes) {
+				text.append(String.format(Locale.ROOT, "[%s] %.1f", timings.trackingCode,
+						millis(timings.nanos[Stage.JOB.ordinal()])));
+
+				String separator = " (";
+				for (Stage stage : Stage.values()) {
+					if (stage == Stage.JOB || timings.nanos[stage.ordinal()] == 0)
+						continue;
+					text.append(separator).append(String.format(Locale.ROOT, "%s %.1f",
+							stage.getDescription(), millis(timings.nanos[stage.ordinal()])));
+					separator = ", ";
+				}
+				text.append(separator.equals(", ") ? ")" : "").append(String.format("%n"));
+			}
+		}
+
+		Logger.report(text.toString().trim());
+	}
+
+	/**
+	 * Записывает отчёт о времени этапов в формате JSON.
+	 * @param path Файл отчёта
+	 * @param summary Итоги выполнения задач
+	 * @throws IOException Если файл не удалось записать
+	 */
+	public static void writeReport(Path path, JobSummary summary) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write(String.format(Locale.ROOT, "{\n  \"elapsedMs\": %.3f,\n  \"jobs\": {",
+					millis(System.nanoTime() - enabledAt)));
+
+			String separator = "";
+			for (JobSummary.Outcome outcome : JobSummary.Outcome.values()) {
+				writer.write(String.format("%s\"%s\": %d", separator, outcome.name().toLowerCase(), summary.count(outcome)));
+				separator = ", ";
+			}
+
+			writer.write("},\n  \"stages\": {");
+			separator = "\n";
+			for (Stage stage : Stage.values()) {
+				final LatencyHistogram histogram = histograms.get(stage);
+				writer.write(String.format(Locale.ROOT, "%s    \"%s\": {\"description\": \"%s\", \"count\": %d, " +
+								"\"totalMs\": %.3f, \"p50Ms\": %.3f, \"p95Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f}",
+						separator, stage.name().toLowerCase(), stage.getDescription(), histogram.getCount(),
+						millis(histogram.getTotalNanos()), millis(histogram.getPercentileNanos(0.5)),
+						millis(histogram.getPercentileNanos(0.95)), millis(histogram.getPercentileNanos(0.99)),
+						millis(histogram.getMaxNanos())));
+				separator = ",\n";
+			}
+
+			writer.write("\n  },\n  \"slowest\": [");
+			separator = "\n";
+			for (CodeTimings timings : getSlowest()) {
+				writer.write(String.format("%s    {\"track\": \"%s\"", separator,
+						timings.trackingCode.replace("\\", "\\\\").replace("\"", "\\\"")));
+				for (Stage stage : Stage.values())
+					writer.write(String.format(Locale.ROOT, ", \"%sMs\": %.3f",
+							stage.name().toLowerCase(), millis(timings.nanos[stage.ordinal()])));
+				writer.write("}");
+				separator = ",\n";
+			}
+			writer.write(separator.equals("\n") ? "]\n}\n" : "\n  ]\n}\n");
+		}
+	}
+
+	/**
+	 * @return Самые долгие завершённые задачи, в начале - самая долгая
+	 */
+	private static List<CodeTimings> getSlowest() {
+		final ArrayList<CodeTimings> result;
+		synchronized (slowest) {
+			result = new ArrayList<>(slowest);
+		}
+		result.sort(slowest.comparator().reversed());
+		return result;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+}
@@ -0,0 +1,271 @@
+package dev.kerastinell.pochtaizv.template;
+
+import dev.kerastinell.pochtaizv.util.TextUtils;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Предварительно разобранный шаблон content.xml.
+ *
+ * Шаблон разбивается единожды на неизменяемые фрагменты и места для подстановки
+ * значений вида ${ключ}. Фрагменты хранятся в виде участков уже закодированного
+ * в UTF-8 массива байт, поэтому при заполнении извещения документ целиком не
+ * собирается в памяти, а записывается по частям непосредственно в выходной поток.
+ *
+ * Кроме того, запоминаются границы элемента draw:page, что позволяет
+ * записать несколько заполненных страниц в один документ.
+ */
+public class ContentTemplate {
+	// Ключ адреса выдачи заполняется иначе, потому что заполняемое поле
+	// состоит из нескольких строк (для LibreOffice - абзацев)
+	public static final String PARAGRAPH_KEY = "Получатель.Адрес.Выдача";
+	// Служебные ключи, которых нет в шаблоне в виде ${ключ}: имя страницы,
+	// путь к изображению штрихкода внутри документа и открывающий тег
+	// draw:image с этим изображением (включает в себя путь к изображению)
+	public static final String PAGE_NAME_KEY = "Страница.Имя";
+	public static final String BARCODE_PATH_KEY = "Штрихкод.Путь";
+	public static final String BARCODE_IMAGE_KEY = "Штрихкод.Изображение";
+
+	private static final byte[] KEY_BEGIN = bytes("${");
+	private static final byte[] KEY_END = bytes("}");
+	// Открывающий и закрывающий теги абзаца вокруг адреса выдачи
+	private static final String PARAGRAPH = TextUtils.paragraph("\0");
+	private static final byte[] PARAGRAPH_BEGIN = bytes(PARAGRAPH.substring(0, PARAGRAPH.indexOf('\0')));
+	private static final byte[] PARAGRAPH_END = bytes(PARAGRAPH.substring(PARAGRAPH.indexOf('\0') + 1));
+	// Элемент страницы и её имя
+	private static final byte[] PAGE_BEGIN = bytes("<draw:page ");
+	private static final byte[] PAGE_END = bytes("</draw:page>");
+	private static final byte[] PAGE_NAME = bytes("draw:name=\"");
+	private static final byte[] QUOTE = bytes("\"");
+	// Ссылка на изображение штрихкода и элемент изображения
+	private static final byte[] BARCODE_PATH = bytes("Pictures/" + Constants.TEMPLATE_BARCODE_FILE);
+	private static final byte[] IMAGE_BEGIN = bytes("<draw:image ");
+	private static final byte[] TAG_END = bytes(">");
+
+	// Содержимое content.xml в кодировке UTF-8
+	private final byte[] source;
+	// Границы мест для подстановки и их ключи в порядке следования в документе
+	private final int[] slotBegins;
+	private final int[] slotEnds;
+	private final String[] keys;
+	// Границы элемента draw:page
+	private final int pageBegin;
+	private final int pageEnd;
+
+	private ContentTemplate(byte[] source, int[] slotBegins, int[] slotEnds, String[] keys, int pageBegin, int pageEnd) {
+		this.source = source;
+		this.slotBegins = slotBegins;
+		this.slotEnds = slotEnds;
+		this.keys = keys;
+		this.pageBegin = pageBegin;
+		this.pageEnd = pageEnd;
+	}
+
+	/**
+	 * Разбирает содержимое content.xml на фрагменты и места для подстановки.
+	 * @param source Содержимое файла content.xml в кодировке UTF-8
+	 * @return Разобранный шаблон
+	 */
+	public static ContentTemplate compile(byte[] source) {
+		final ArrayList<Slot> slots = new ArrayList<>();
+
+		int idxBegin = 0;
+		while ((idxBegin = indexOf(source, KEY_BEGIN, idxBegin)) != -1) {
+			final int idxEnd = indexOf(source, KEY_END, idxBegin + KEY_BEGIN.length);
+			if (idxEnd == -1)
+				break;
+
+			// Байты "${" и "}" не встречаются внутри многобайтовых символов UTF-8,
+			// поэтому ключ можно раскодировать независимо от остального документа
+			final String key = new String(source, idxBegin + KEY_BEGIN.length,
+					idxEnd - idxBegin - KEY_BEGIN.length, StandardCharsets.UTF_8);
+			int placeholderBegin = idxBegin;
+			int placeholderEnd = idxEnd + KEY_END.length;
+
+			// Адрес выдачи подставляется вместе с окружающим его абзацем
+			if (key.equals(PARAGRAPH_KEY) &&
+					startsWith(source, PARAGRAPH_BEGIN, placeholderBegin - PARAGRAPH_BEGIN.length) &&
+					startsWith(source, PARAGRAPH_END, placeholderEnd)) {
+				placeholderBegin -= PARAGRAPH_BEGIN.length;
+				placeholderEnd += PARAGRAPH_END.length;
+			}
+
+			slots.add(new Slot(placeholderBegin, placeholderEnd, key));
+			idxBegin = placeholderEnd;
+		}
+
+		// Ссылки на изображение штрихкода
+		idxBegin = 0;
+		while ((idxBegin = indexOf(source, BARCODE_PATH, idxBegin)) != -1) {
+			slots.add(new Slot(idxBegin, idxBegin + BARCODE_PATH.length, BARCODE_PATH_KEY));
+
+			final int imageBegin = lastIndexOf(source, IMAGE_BEGIN, idxBegin);
+			final int imageEnd = indexOf(source, TAG_END, idxBegin);
+			if (imageBegin != -1 && imageEnd != -1 && lastIndexOf(source, TAG_END, idxBegin) < imageBegin)
+				slots.add(new Slot(imageBegin, imageEnd + TAG_END.length, BARCODE_IMAGE_KEY));
+
+			idxBegin += BARCODE_PATH.length;
+		}
+
+		// Страница и её имя. Если страница не найдена, весь документ считается страницей
+		int pageBegin = indexOf(source, PAGE_BEGIN, 0);
+		int pageEnd = pageBegin == -1 ? -1 : indexOf(source, PAGE_END, pageBegin);
+		if (pageEnd == -1) {
+			pageBegin = 0;
+			pageEnd = source.length;
+		} else {
+			pageEnd += PAGE_END.length;
+
+			final int tagEnd = indexOf(source, TAG_END, pageBegin);
+			final int nameBegin = indexOf(source, PAGE_NAME, pageBegin);
+			if (nameBegin != -1 && nameBegin < tagEnd) {
+				final int valueBegin = nameBegin + PAGE_NAME.length;
+				slots.add(new Slot(valueBegin, indexOf(source, QUOTE, valueBegin), PAGE_NAME_KEY));
+			}
+		}
+
+		slots.sort(Comparator.comparingInt(slot -> slot.begin));
+
+		return new ContentTemplate(source,
+				slots.stream().mapToInt(slot -> slot.begin).toArray(),
+				slots.stream().mapToInt(slot -> slot.end).toArray(),
+				slots.stream().map(slot -> slot.key).toArray(String[]::new),
+				pageBegin, pageEnd);
+	}
+
+	/**
+	 * Заполняет шаблон значениями и записывает результат в поток.
+	 * @param data Коллекция значений для заполнения шаблона. Места для подстановки,
+	 *             для которых значение не найдено, остаются без изменений.
+	 * @param output Поток, в который записывается заполненное извещение
+	 * @throws IOException При ошибке записи
+	 */
+	public void write(Map<String, String> data, OutputStream output) throws IOException {
+		write(data, output, 0, source.length);
+	}
+
+	/**
+	 * Записывает в поток часть документа, предшествующую странице.
+	 * @param output Выходной поток
+	 * @throws IOException При ошибке записи
+	 */
+	public void writeHeader(OutputStream output) throws IOException {
+		write(null, output, 0, pageBegin);
+	}
+
+	/**
+	 * Заполняет страницу извещения значениями и записывает её в поток.
+	 * @param data Коллекция значений для заполнения шаблона
+	 * @param output Выходной поток
+	 * @throws IOException При ошибке записи
+	 */
+	public void writePage(Map<String, String> data, OutputStream output) throws IOException {
+		write(data, output, pageBegin, pageEnd);
+	}
+
+	/**
+	 * Записывает в поток часть документа, следующую за страницей.
+	 * @param output Выходной поток
+	 * @throws IOException При ошибке записи
+	 */
+	public void writeFooter(OutputStream output) throws IOException {
+		write(null, output, pageEnd, source.length);
+	}
+
+	/**
+	 * Заполняет участок шаблона значениями и записывает его в поток.
+	 * Если место для подстановки вложено в уже заполненное, оно пропускается.
+	 * @param data Коллекция значений для заполнения шаблона. Если null, то все
+	 *             места для подстановки на участке остаются без изменений.
+	 * @param output Выходной поток
+	 * @param begin Начало участка
+	 * @param end Конец участка
+	 * @throws IOException При ошибке записи
+	 */
+	private void write(Map<String, String> data, OutputStream output, int begin, int end) throws IOException {
+		int position = begin;
+		for (int i = 0; i < keys.length; i++) {
+			if (slotBegins[i] < Math.max(begin, position) || slotEnds[i] > end)
+				continue;
+
+			final String value = data == null ? null : data.get(keys[i]);
+			if (value == null) // Значение не найдено, оставить место для подстановки как есть
+				continue;
+
+			output.write(source, position, slotBegins[i] - position);
+			output.write(value.getBytes(StandardCharsets.UTF_8));
+			position = slotEnds[i];
+		}
+		output.write(source, position, end - position);
+	}
+
+	/**
+	 * Ищет последовательность байт в массиве.
+	 * @param array Массив, в котором производится поиск
+	 * @param target Искомая последовательность
+	 * @param from Индекс, с которого начинается поиск
+	 * @return Индекс начала найденной последовательности или -1, если она не найдена
+	 */
+	private static int indexOf(byte[] array, byte[] target, int from) {
+		for (int i = Math.max(from, 0); i <= array.length - target.length; i++)
+			if (startsWith(array, target, i))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Ищет последнее вхождение последовательности байт в массив перед указанным индексом.
+	 * @param array Массив, в котором производится поиск
+	 * @param target Искомая последовательность
+	 * @param before Индекс, до которого производится поиск
+	 * @return Индекс начала найденной последовательности или -1, если она не найдена
+	 */
+	private static int lastIndexOf(byte[] array, byte[] target, int before) {
+		for (int i = Math.min(before, array.length) - target.length; i >= 0; i--)
+			if (startsWith(array, target, i))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Проверяет, начинается ли с указанного индекса массива последовательность байт.
+	 * @param array Массив для проверки
+	 * @param target Искомая последовательность
+	 * @param offset Индекс в массиве
+	 * @return true, если последовательность найдена по указанному индексу
+	 */
+	private static boolean startsWith(byte[] array, byte[] target, int offset) {
+		if (offset < 0 || offset + target.length > array.length)
+			return false;
+
+		for (int i = 0; i < target.length; i++)
+			if (array[offset + i] != target[i])
+				return false;
+		return true;
+	}
+
+	private static byte[] bytes(String string) {
+		return string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Место для подстановки, найденное при разборе шаблона.
+	 */
+	private static class Slot {
+		final int begin;
+		final int end;
+		final String key;
+
+		Slot(int begin, int end, String key) {
+			this.begin = begin;
+			this.end = end;
+			this.key = key;
+		}
+	}
+}
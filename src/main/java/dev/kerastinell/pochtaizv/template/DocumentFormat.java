@@ -0,0 +1,86 @@
+package dev.kerastinell.pochtaizv.template;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+
+/**
+ * Формат выходного документа.
+ */
+public enum DocumentFormat {
+	// OpenDocument Graphic, ZIP-архив
+	ODG("odg", "application/vnd.oasis.opendocument.graphics") {
+		@Override
+		DocumentWriter createWriter(TemplateBundle template) {
+			return new OdgWriter(template);
+		}
+	},
+	// Flat XML ODF, один XML-файл без сжатия
+	FODG("fodg", "application/vnd.oasis.opendocument.graphics-flat-xml") {
+		@Override
+		DocumentWriter createWriter(TemplateBundle template) {
+			return new FodgWriter(template);
+		}
+	};
+
+	private final String extension;
+	private final String mediaType;
+
+	// Созданный для шаблона экземпляр, используемый всеми задачами
+	private DocumentWriter writer;
+	private TemplateBundle writerTemplate;
+
+	DocumentFormat(String extension, String mediaType) {
+		this.extension = extension;
+		this.mediaType = mediaType;
+	}
+
+	/**
+	 * Создаёт экземпляр, записывающий документы этого формата.
+	 * @param template Набор файлов шаблона
+	 * @return Экземпляр для записи документов
+	 */
+	abstract DocumentWriter createWriter(TemplateBundle template);
+
+	/**
+	 * Возвращает экземпляр, записывающий документы этого формата. Экземпляр
+	 * создаётся единожды для шаблона и может использоваться из разных потоков.
+	 * @param template Набор файлов шаблона
+	 * @return Экземпляр для записи документов
+	 */
+	public synchronized DocumentWriter getWriter(TemplateBundle template) {
+		if (writer == null || writerTemplate != template) {
+			writer = createWriter(template);
+			writerTemplate = template;
+		}
+		return writer;
+	}
+
+	/**
+	 * Возвращает расширение файла документа.
+	 * @return Расширение файла без точки
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Возвращает MIME-тип документа.
+	 * @return MIME-тип для заголовка Content-Type
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Преобразует формат документа из параметра командной строки.
+	 * @param value Значение параметра
+	 * @return Формат документа. При нераспознанном значении - null
+	 */
+	public static DocumentFormat fromCli(String value) {
+		for (DocumentFormat format : values())
+			if (format.extension.equalsIgnoreCase(value))
+				return format;
+
+		Logger.verbose("Неизвестный формат документа: " + value);
+		return null;
+	}
+}
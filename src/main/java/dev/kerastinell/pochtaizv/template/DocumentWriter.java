@@ -0,0 +1,19 @@
+package dev.kerastinell.pochtaizv.template;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Запись извещений в документ определённого формата.
+ * @see DocumentFormat
+ */
+public interface DocumentWriter {
+	/**
+	 * Записывает извещения в документ.
+	 * @param notices Извещения, каждое из которых займёт отдельную страницу
+	 * @param stream Поток, в который записывается документ. Закрывается по завершении записи
+	 * @throws IOException При ошибке записи
+	 */
+	void write(List<Notice> notices, OutputStream stream) throws IOException;
+}
@@ -0,0 +1,212 @@
+package dev.kerastinell.pochtaizv.template;
+
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.stats.Stage;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Записывает извещения в документ Flat XML ODF (.fodg).
+ *
+ * Документ представляет собой один XML-файл без ZIP-архива: метаданные, настройки
+ * и стили шаблона встраиваются в него напрямую, а изображения штрихкодов
+ * записываются внутри страниц в кодировке base64. Всё, что предшествует страницам,
+ * собирается единожды при создании экземпляра, после чего страницы извещений
+ * записываются в выходной поток по мере заполнения.
+ */
+public class FodgWriter implements DocumentWriter {
+	private static final Pattern NAMESPACE = Pattern.compile("xmlns:([\\w-]+)=\"[^\"]*\"");
+	private static final Pattern VERSION = Pattern.compile("office:version=\"[^\"]*\"");
+	private static final Pattern FONT_FACE = Pattern.compile("<style:font-face\\s[^>]*?(?:/>|>.*?</style:font-face>)", Pattern.DOTALL);
+	private static final Pattern STYLE_NAME = Pattern.compile("style:name=\"([^\"]*)\"");
+
+	private static final String BODY_BEGIN = "<office:body>";
+	private static final String CONTENT_END = "</office:document-content>";
+
+	private final ContentTemplate contentTemplate;
+	// Изображение штрихкода из шаблона для страниц без кода отслеживания
+	private final String templateBarcode;
+	// Начало документа до первой страницы и окончание документа после последней
+	private final byte[] prologue;
+	private final byte[] epilogue;
+
+	public FodgWriter(TemplateBundle template) {
+		contentTemplate = template.getContentTemplate();
+
+		try {
+			final String content = read(template, Constants.TEMPLATE_XML_FILE);
+			final String styles = read(template, "styles.xml");
+			final String meta = read(template, "meta.xml");
+			final String settings = read(template, "settings.xml");
+			final String mimeType = read(template, Constants.TEMPLATE_MIMETYPE_FILE).trim();
+
+			// Начало content.xml вплоть до первой страницы и его окончание
+			final ByteArrayOutputStream header = new ByteArrayOutputStream();
+			final ByteArrayOutputStream footer = new ByteArrayOutputStream();
+			contentTemplate.writeHeader(header);
+			contentTemplate.writeFooter(footer);
+			final String contentHeader = header.toString(StandardCharsets.UTF_8.name());
+			final String contentFooter = footer.toString(StandardCharsets.UTF_8.name());
+
+			final StringBuilder document = new StringBuilder()
+					.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+					.append("<office:document");
+
+			// Объединение пространств имён всех файлов шаблона
+			final LinkedHashMap<String, String> namespaces = new LinkedHashMap<>();
+			for (String xml : new String[] {content, styles, meta, settings}) {
+				final Matcher matcher = NAMESPACE.matcher(rootElement(xml));
+				while (matcher.find())
+					namespaces.putIfAbsent(matcher.group(1), matcher.group());
+			}
+			for (String namespace : namespaces.values())
+				document.append(' ').append(namespace);
+
+			final Matcher version = VERSION.matcher(rootElement(content));
+			if (version.find())
+				document.append(' ').append(version.group());
+			document.append(" office:mimetype=\"").append(mimeType).append("\">");
+
+			document.append(element(meta, "meta"))
+					.append(element(settings, "settings"))
+					.append(element(content, "scripts"))
+					.append("<office:font-face-decls>")
+					.append(fontFaces(styles, content))
+					.append("</office:font-face-decls>")
+					.append(element(styles, "styles"))
+					.append("<office:automatic-styles>")
+					.append(children(styles, "automatic-styles"))
+					.append(children(content, "automatic-styles"))
+					.append("</office:automatic-styles>")
+					.append(element(styles, "master-styles"))
+					.append(contentHeader.substring(contentHeader.indexOf(BODY_BEGIN)));
+
+			prologue = document.toString().getBytes(StandardCharsets.UTF_8);
+			epilogue = contentFooter.replace(CONTENT_END, "</office:document>").getBytes(StandardCharsets.UTF_8);
+			templateBarcode = Base64.getEncoder().encodeToString(
+					IoUtils.readBytes(template.open("Pictures/" + Constants.TEMPLATE_BARCODE_FILE)));
+		} catch (IOException exception) {
+			// Файлы шаблона уже загружены в память, ошибка возможна лишь при неполном шаблоне
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	@Override
+	public void write(List<Notice> notices, OutputStream stream) throws IOException {
+		final Stats.Span span = Stats.start(Stage.WRITE, Notice.getTrackingCodes(notices));
+		try {
+			writeDocument(notices, stream);
+		} finally {
+			span.end();
+		}
+	}
+
+	private void writeDocument(List<Notice> notices, OutputStream stream) throws IOException {
+		if (notices.isEmpty())
+			throw new IllegalArgumentException("Нет извещений для записи");
+
+		try (OutputStream output = new BufferedOutputStream(stream, 16384)) {
+			output.write(prologue);
+
+			for (int i = 0; i < notices.size(); i++) {
+				final Notice notice = notices.get(i);
+				Logger.track(notice.getTrackingCode(), Stage.FILL, "Заполнение шаблона");
+
+				String barcode = templateBarcode;
+				String mediaType = BarcodeFormat.PNG.getMediaType();
+				if (notice.getBarcodeImage() != null) {
+					barcode = Base64.getEncoder().encodeToString(notice.getBarcodeImage());
+					mediaType = notice.getBarcodeFormat().getMediaType();
+				}
+
+				final HashMap<String, String> data = new HashMap<>(notice.getTemplateData());
+				data.put(ContentTemplate.PAGE_NAME_KEY, "page" + (i + 1));
+				data.put(ContentTemplate.BARCODE_IMAGE_KEY, "<draw:image loext:mime-type=\"" + mediaType + "\">" +
+						"<office:binary-data>" + barcode + "</office:binary-data>");
+
+				final Stats.Span span = Stats.start(Stage.FILL, notice.getTrackingCode());
+				try {
+					contentTemplate.writePage(data, output);
+				} finally {
+					span.end();
+				}
+			}
+
+			output.write(epilogue);
+		}
+	}
+
+	/**
+	 * Объединяет объявления шрифтов из нескольких файлов без повторов.
+	 * @param sources Содержимое файлов шаблона
+	 * @return Объявления шрифтов
+	 */
+	private static String fontFaces(String... sources) {
+		final LinkedHashMap<String, String> fontFaces = new LinkedHashMap<>();
+		for (String source : sources) {
+			final Matcher matcher = FONT_FACE.matcher(children(source, "font-face-decls"));
+			while (matcher.find()) {
+				final Matcher name = STYLE_NAME.matcher(matcher.group());
+				fontFaces.putIfAbsent(name.find() ? name.group(1) : matcher.group(), matcher.group());
+			}
+		}
+
+		return String.join("", fontFaces.values());
+	}
+
+	/**
+	 * Возвращает открывающий тег корневого элемента файла шаблона.
+	 */
+	private static String rootElement(String xml) {
+		final int idxBegin = xml.indexOf("<office:");
+		return xml.substring(idxBegin, xml.indexOf('>', idxBegin) + 1);
+	}
+
+	/**
+	 * Возвращает элемент office:name целиком вместе с тегами.
+	 * @param xml Содержимое файла шаблона
+	 * @param name Имя элемента без префикса
+	 * @return Элемент или пустая строка, если элемент не найден
+	 */
+	private static String element(String xml, String name) {
+		final String emptyTag = "<office:" + name + "/>";
+		if (xml.contains(emptyTag))
+			return emptyTag;
+
+		final int idxBegin = xml.indexOf("<office:" + name + ">");
+		final String endTag = "</office:" + name + ">";
+		final int idxEnd = xml.indexOf(endTag, idxBegin);
+		return idxBegin == -1 || idxEnd == -1 ? "" : xml.substring(idxBegin, idxEnd + endTag.length());
+	}
+
+	/**
+	 * Возвращает содержимое элемента office:name без его собственных тегов.
+	 * @param xml Содержимое файла шаблона
+	 * @param name Имя элемента без префикса
+	 * @return Содержимое элемента или пустая строка, если элемент не найден или пуст
+	 */
+	private static String children(String xml, String name) {
+		final String element = element(xml, name);
+		final int idxBegin = element.indexOf('>') + 1;
+		final int idxEnd = element.lastIndexOf("</");
+		return idxEnd < idxBegin ? "" : element.substring(idxBegin, idxEnd);
+	}
+
+	private static String read(TemplateBundle template, String name) throws IOException {
+		final InputStream input = template.open(name);
+		if (input == null)
+			throw new FileNotFoundException(name);
+		return IoUtils.readString(input);
+	}
+}
@@ -0,0 +1,58 @@
+package dev.kerastinell.pochtaizv.template;
+
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Данные одного извещения, подготовленные для записи в документ.
+ */
+public class Notice {
+	private final String trackingCode;
+	private final Map<String, String> templateData;
+	private final byte[] barcodeImage;
+	private final BarcodeFormat barcodeFormat;
+
+	/**
+	 * @param trackingCode Код отслеживания отправления. Пустая строка, если код не указан
+	 * @param templateData Коллекция значений для заполнения шаблона
+	 * @param barcodeImage Содержимое PNG-файла с изображением штрихкода или null, если штрихкод не нужен
+	 * @param barcodeFormat Формат изображения штрихкода
+	 */
+	public Notice(String trackingCode, Map<String, String> templateData, byte[] barcodeImage, BarcodeFormat barcodeFormat) {
+		this.trackingCode = trackingCode;
+		this.templateData = templateData;
+		this.barcodeImage = barcodeImage;
+		this.barcodeFormat = barcodeFormat;
+	}
+
+	public String getTrackingCode() {
+		return trackingCode;
+	}
+
+	public Map<String, String> getTemplateData() {
+		return templateData;
+	}
+
+	public byte[] getBarcodeImage() {
+		return barcodeImage;
+	}
+
+	public BarcodeFormat getBarcodeFormat() {
+		return barcodeFormat;
+	}
+
+	/**
+	 * @param notices Извещения
+	 * @return Указанные коды отслеживания извещений
+	 */
+	public static List<String> getTrackingCodes(List<Notice> notices) {
+		final ArrayList<String> trackingCodes = new ArrayList<>();
+		for (Notice notice : notices)
+			if (!notice.getTrackingCode().isEmpty())
+				trackingCodes.add(notice.getTrackingCode());
+		return trackingCodes;
+	}
+}
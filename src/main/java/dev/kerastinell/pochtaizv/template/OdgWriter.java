@@ -0,0 +1,173 @@
+package dev.kerastinell.pochtaizv.template;
+
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.stats.Stage;
+import dev.kerastinell.pochtaizv.stats.Stats;
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import dev.kerastinell.pochtaizv.util.io.PackedEntry;
+import dev.kerastinell.pochtaizv.util.io.ZipWriter;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Записывает извещения в документ OpenDocument Graphic (.odg).
+ *
+ * Одно извещение записывается в точности как шаблон. Несколько извещений
+ * записываются последовательными страницами одного документа: стили и настройки
+ * документа при этом записываются единожды, а каждой странице достаётся
+ * собственное изображение штрихкода в директории Pictures/.
+ */
+public class OdgWriter implements DocumentWriter {
+	// Путь к изображению штрихкода в шаблоне
+	private static final String TEMPLATE_BARCODE_PATH = "Pictures/" + Constants.TEMPLATE_BARCODE_FILE;
+	// Закрывающий тег списка файлов документа
+	private static final String MANIFEST_END = "</manifest:manifest>";
+
+	private final TemplateBundle template;
+
+	public OdgWriter(TemplateBundle template) {
+		this.template = template;
+	}
+
+	@Override
+	public void write(List<Notice> notices, OutputStream stream) throws IOException {
+		final Stats.Span span = Stats.start(Stage.WRITE, Notice.getTrackingCodes(notices));
+		try {
+			writeDocument(notices, stream);
+		} finally {
+			span.end();
+		}
+	}
+
+	private void writeDocument(List<Notice> notices, OutputStream stream) throws IOException {
+		if (notices.isEmpty())
+			throw new IllegalArgumentException("Нет извещений для записи");
+
+		final boolean merged = notices.size() > 1;
+
+		// Пути к изображениям штрихкодов для каждой страницы. Если у извещения
+		// нет штрихкода, на странице остаётся изображение из шаблона. Единственный
+		// штрихкод в формате PNG записывается вместо изображения из шаблона
+		final String[] barcodePaths = new String[notices.size()];
+		boolean extraPictures = false;
+		for (int i = 0; i < notices.size(); i++) {
+			final Notice notice = notices.get(i);
+			if (notice.getBarcodeImage() == null)
+				continue;
+
+			final String extension = notice.getBarcodeFormat().getExtension();
+			if (merged)
+				barcodePaths[i] = String.format("Pictures/barcode%d.%s", i + 1, extension);
+			else if (notice.getBarcodeFormat() == BarcodeFormat.PNG)
+				barcodePaths[i] = TEMPLATE_BARCODE_PATH;
+			else barcodePaths[i] = "Pictures/barcode." + extension;
+
+			extraPictures |= !barcodePaths[i].equals(TEMPLATE_BARCODE_PATH);
+		}
+
+		try (ZipWriter output = new ZipWriter(stream)) {
+			// Все файлы копируются в выходной файл уже сжатыми за исключением:
+			//    1. content.xml - сюда подставляются данные пользователя
+			//    2. *.png - заменяется на сгенерированный штрихкод или дополняется штрихкодами страниц
+			//    3. manifest.xml - дополняется штрихкодами, записанными под собственными именами
+			for (String pathInZip : template.getEntryNames()) {
+				if (pathInZip.equals(Constants.TEMPLATE_XML_FILE)) {
+					output.putNextEntry(pathInZip);
+					writeContent(notices, barcodePaths, output);
+				} else if (pathInZip.equals(TEMPLATE_BARCODE_PATH)) {
+					if (!TEMPLATE_BARCODE_PATH.equals(barcodePaths[0]))
+						output.putPackedEntry(template.getPackedEntry(pathInZip));
+
+					for (int i = 0; i < notices.size(); i++) {
+						if (barcodePaths[i] == null)
+							continue;
+
+						final Notice notice = notices.get(i);
+						// PNG уже сжат, поэтому записывается в архив без повторного сжатия
+						output.putPackedEntry(notice.getBarcodeFormat() == BarcodeFormat.PNG ?
+								PackedEntry.store(barcodePaths[i], notice.getBarcodeImage()) :
+								PackedEntry.deflate(barcodePaths[i], notice.getBarcodeImage()));
+					}
+				} else if (extraPictures && pathInZip.equals(TemplateBundle.MANIFEST_FILE)) {
+					output.putNextEntry(pathInZip);
+					writeManifest(notices, barcodePaths, output);
+				} else output.putPackedEntry(template.getPackedEntry(pathInZip));
+			}
+		}
+	}
+
+	/**
+	 * Заполняет content.xml данными извещений.
+	 * @param notices Извещения
+	 * @param barcodePaths Пути к изображениям штрихкодов для каждой страницы
+	 * @param output Выходной поток
+	 * @throws IOException При ошибке записи
+	 */
+	private void writeContent(List<Notice> notices, String[] barcodePaths, OutputStream output) throws IOException {
+		final ContentTemplate contentTemplate = template.getContentTemplate();
+
+		if (notices.size() == 1) {
+			Logger.track(notices.get(0).getTrackingCode(), Stage.FILL, "Заполнение шаблона");
+
+			Map<String, String> data = notices.get(0).getTemplateData();
+			if (barcodePaths[0] != null && !barcodePaths[0].equals(TEMPLATE_BARCODE_PATH)) {
+				data = new HashMap<>(data);
+				data.put(ContentTemplate.BARCODE_PATH_KEY, barcodePaths[0]);
+			}
+
+			final Stats.Span span = Stats.start(Stage.FILL, notices.get(0).getTrackingCode());
+			try {
+				contentTemplate.write(data, output);
+			} finally {
+				span.end();
+			}
+			return;
+		}
+
+		contentTemplate.writeHeader(output);
+		for (int i = 0; i < notices.size(); i++) {
+			final Notice notice = notices.get(i);
+			Logger.track(notice.getTrackingCode(), Stage.FILL, "Заполнение шаблона");
+
+			final HashMap<String, String> data = new HashMap<>(notice.getTemplateData());
+			data.put(ContentTemplate.PAGE_NAME_KEY, "page" + (i + 1));
+			if (barcodePaths[i] != null)
+				data.put(ContentTemplate.BARCODE_PATH_KEY, barcodePaths[i]);
+
+			final Stats.Span span = Stats.start(Stage.FILL, notice.getTrackingCode());
+			try {
+				contentTemplate.writePage(data, output);
+			} finally {
+				span.end();
+			}
+		}
+		contentTemplate.writeFooter(output);
+	}
+
+	/**
+	 * Дополняет список файлов документа изображениями штрихкодов страниц.
+	 * @param notices Извещения
+	 * @param barcodePaths Пути к изображениям штрихкодов для каждой страницы
+	 * @param output Выходной поток
+	 * @throws IOException При ошибке записи
+	 */
+	private void writeManifest(List<Notice> notices, String[] barcodePaths, OutputStream output) throws IOException {
+		final StringBuilder entries = new StringBuilder();
+		for (int i = 0; i < barcodePaths.length; i++)
+			if (barcodePaths[i] != null && !barcodePaths[i].equals(TEMPLATE_BARCODE_PATH))
+				entries.append(String.format(" <manifest:file-entry manifest:full-path=\"%s\" manifest:media-type=\"%s\"/>\n",
+						barcodePaths[i], notices.get(i).getBarcodeFormat().getMediaType()));
+
+		final String manifest = IoUtils.readString(template.open(TemplateBundle.MANIFEST_FILE));
+		final int idxEnd = manifest.lastIndexOf(MANIFEST_END);
+		output.write((manifest.substring(0, idxEnd) + entries + manifest.substring(idxEnd))
+				.getBytes(StandardCharsets.UTF_8));
+	}
+}
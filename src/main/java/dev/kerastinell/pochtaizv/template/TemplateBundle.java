@@ -0,0 +1,195 @@
+package dev.kerastinell.pochtaizv.template;
+
+import dev.kerastinell.pochtaizv.util.Logger;
+import dev.kerastinell.pochtaizv.util.io.IoUtils;
+import dev.kerastinell.pochtaizv.util.io.PackedEntry;
+import dev.kerastinell.pochtaizv.values.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Неизменяемый набор файлов шаблона извещения, загруженный в память.
+ *
+ * Все файлы шаблона считываются единожды, после чего content.xml разбирается
+ * в {@link ContentTemplate}, а остальные файлы заранее сжимаются в {@link PackedEntry}.
+ * Набор используется всеми задачами одновременно.
+ */
+public class TemplateBundle {
+	// Путь к списку файлов документа, записывается в архив последним
+	public static final String MANIFEST_FILE = "META-INF/manifest.xml";
+
+	// Порядок записи файлов в архив, внутри группы файлы упорядочены по имени
+	private static final Comparator<String> ENTRY_ORDER = Comparator
+			.comparingInt(TemplateBundle::entryRank)
+			.thenComparing(Comparator.naturalOrder());
+
+	private static TemplateBundle instance;
+
+	// Пути к файлам внутри документа в порядке записи в архив
+	private final List<String> entryNames;
+	// Исходное содержимое файлов
+	private final Map<String, byte[]> entryData;
+	// Заранее сжатые файлы, не изменяющиеся от извещения к извещению
+	private final Map<String, PackedEntry> packedEntries;
+	private final ContentTemplate contentTemplate;
+
+	private TemplateBundle(List<String> entryNames, Map<String, byte[]> entryData,
+						   Map<String, PackedEntry> packedEntries, ContentTemplate contentTemplate) {
+		this.entryNames = Collections.unmodifiableList(entryNames);
+		this.entryData = Collections.unmodifiableMap(entryData);
+		this.packedEntries = Collections.unmodifiableMap(packedEntries);
+		this.contentTemplate = contentTemplate;
+	}
+
+	/**
+	 * Возвращает набор файлов внутреннего шаблона извещения.
+	 * При первом вызове шаблон загружается из внутренних ресурсов {@link Constants#TEMPLATE_DIR}.
+	 * @return Набор файлов шаблона
+	 * @throws IOException При ошибке чтения файлов шаблона
+	 */
+	public static synchronized TemplateBundle getInstance() throws IOException {
+		if (instance == null)
+			instance = loadResources(Constants.TEMPLATE_DIR);
+		return instance;
+	}
+
+	/**
+	 * Загружает файлы шаблона из директории внутренних ресурсов. Файлы читаются
+	 * напрямую из .jar, без создания файловой системы внутри него.
+	 * @param directory Путь к директории внутренних ресурсов
+	 * @return Набор файлов шаблона
+	 * @throws IOException При ошибке чтения файлов шаблона
+	 */
+	private static TemplateBundle loadResources(String directory) throws IOException {
+		Logger.verbose("Загрузка шаблона извещения");
+
+		final HashMap<String, byte[]> entryData = new HashMap<>();
+		for (String pathInZip : IoUtils.list(directory)) {
+			try (InputStream input = IoUtils.open(directory + "/" + pathInZip)) {
+				if (input == null)
+					throw new FileNotFoundException(pathInZip);
+				entryData.put(pathInZip, IoUtils.readBytes(input));
+			}
+		}
+
+		return build(entryData);
+	}
+
+	/**
+	 * Загружает файлы шаблона из директории.
+	 * @param directory Директория с распакованным шаблоном
+	 * @return Набор файлов шаблона
+	 * @throws IOException При ошибке чтения файлов шаблона
+	 */
+	public static TemplateBundle load(Path directory) throws IOException {
+		if (directory == null)
+			throw new FileNotFoundException("Директория шаблона не найдена");
+
+		Logger.verbose("Загрузка шаблона извещения");
+
+		final List<Path> paths;
+		try (Stream<Path> walk = Files.walk(directory)) {
+			paths = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+
+		final HashMap<String, byte[]> entryData = new HashMap<>();
+		for (Path path : paths) {
+			final String pathInZip = directory
+					.relativize(path).toString()
+					// Когда программа запущена из среды разработки,
+					// используется системный разделитель директорий,
+					// из-за чего в Windows сгенерированные извещения не
+					// открываются в LibreOffice без функции восстановления
+					.replace("\\", "/");
+
+			try (InputStream input = IoUtils.open(path)) {
+				entryData.put(pathInZip, IoUtils.readBytes(input));
+			}
+		}
+
+		return build(entryData);
+	}
+
+	/**
+	 * Разбирает content.xml и заранее сжимает остальные файлы шаблона.
+	 * @param entryData Содержимое файлов по путям внутри документа
+	 * @return Набор файлов шаблона
+	 * @throws IOException Если среди файлов нет content.xml
+	 */
+	private static TemplateBundle build(HashMap<String, byte[]> entryData) throws IOException {
+		if (!entryData.containsKey(Constants.TEMPLATE_XML_FILE))
+			throw new FileNotFoundException(Constants.TEMPLATE_XML_FILE);
+
+		final ArrayList<String> entryNames = new ArrayList<>(entryData.keySet());
+		entryNames.sort(ENTRY_ORDER);
+
+		final HashMap<String, PackedEntry> packedEntries = new HashMap<>();
+		for (String name : entryNames) {
+			if (name.equals(Constants.TEMPLATE_XML_FILE))
+				continue;
+
+			final byte[] data = entryData.get(name);
+			packedEntries.put(name, name.equals(Constants.TEMPLATE_MIMETYPE_FILE) ?
+					PackedEntry.store(name, data) : // Стандарт ODF запрещает сжимать mimetype
+					PackedEntry.deflate(name, data));
+		}
+
+		return new TemplateBundle(entryNames, entryData, packedEntries,
+				ContentTemplate.compile(entryData.get(Constants.TEMPLATE_XML_FILE)));
+	}
+
+	/**
+	 * Определяет место файла в архиве: mimetype всегда первый, как того
+	 * требует стандарт ODF, список файлов документа последний.
+	 * @param name Путь к файлу внутри документа
+	 * @return Порядковый номер группы файлов
+	 */
+	private static int entryRank(String name) {
+		if (name.equals(Constants.TEMPLATE_MIMETYPE_FILE))
+			return 0;
+		return name.equals(MANIFEST_FILE) ? 2 : 1;
+	}
+
+	/**
+	 * Возвращает пути к файлам шаблона в порядке записи в архив.
+	 * @return Неизменяемый список путей
+	 */
+	public List<String> getEntryNames() {
+		return entryNames;
+	}
+
+	/**
+	 * Открывает исходное содержимое файла шаблона на чтение.
+	 * @param name Путь к файлу внутри документа
+	 * @return Поток для чтения данных или null, если такого файла нет
+	 */
+	public InputStream open(String name) {
+		final byte[] data = entryData.get(name);
+		return data == null ? null : new ByteArrayInputStream(data);
+	}
+
+	/**
+	 * Возвращает заранее сжатый файл шаблона.
+	 * @param name Путь к файлу внутри документа
+	 * @return Сжатый файл или null, если файл заполняется для каждого извещения
+	 */
+	public PackedEntry getPackedEntry(String name) {
+		return packedEntries.get(name);
+	}
+
+	/**
+	 * Возвращает разобранный шаблон content.xml.
+	 * @return Разобранный шаблон
+	 */
+	public ContentTemplate getContentTemplate() {
+		return contentTemplate;
+	}
+}
@@ -0,0 +1,45 @@
+package dev.kerastinell.pochtaizv.util;
+
+import okhttp3.Dispatcher;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Создание пулов потоков для выполнения задач и запросов к серверу.
+ *
+ * Эта реализация для Java 8 использует обычные потоки. В многоверсионном
+ * jar-файле её заменяет реализация из src/main/java21, которая на Java 21
+ * и новее использует виртуальные потоки. Методы обеих реализаций должны совпадать.
+ */
+public class Concurrency {
+	/**
+	 * @return true, если задачи выполняются в виртуальных потоках
+	 */
+	public static boolean isVirtual() {
+		return false;
+	}
+
+	/**
+	 * Создаёт пул потоков, заполняющих и записывающих извещения. Очередь пула
+	 * ограничена: если она заполнена, задачу выполняет поток, который её передал.
+	 * @param threads Количество потоков
+	 * @param queueSizePerThread Длина очереди в расчёте на один поток
+	 * @return Пул потоков
+	 */
+	public static ExecutorService newRenderExecutor(int threads, int queueSizePerThread) {
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(threads * queueSizePerThread),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Создаёт диспетчер асинхронных запросов OkHttp.
+	 * @return Диспетчер с пулом потоков OkHttp по-умолчанию
+	 */
+	public static Dispatcher newDispatcher() {
+		return new Dispatcher();
+	}
+}
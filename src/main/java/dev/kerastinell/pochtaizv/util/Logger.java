@@ -1,57 +1,369 @@
 package dev.kerastinell.pochtaizv.util;
 
+import dev.kerastinell.pochtaizv.stats.Stage;
+import dev.kerastinell.pochtaizv.values.Constants;
 import dev.kerastinell.pochtaizv.values.GlobalOptions;
 
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * Простейшая реализация логгера, использующая System.out для вывода текста.
+ * Асинхронный логгер.
+ *
+ * Потоки, выполняющие задачи, не выводят сообщения сами, а передают их через
+ * очередь без блокировок {@link RingBuffer} в отдельный поток, который выводит
+ * их по порядку в текстовом виде или в формате JSON Lines (--log-format=json).
+ * Если очередь заполнена, сообщения уровней {@link Level#INFO} и {@link Level#TRACK}
+ * отбрасываются, чтобы не задерживать задачи, а их количество выводится позже.
+ * Ошибки не отбрасываются. При завершении программы очередь выводится до конца,
+ * после чего сообщения выводятся сразу в вызывающем потоке. Обработчики завершения
+ * JVM выполняются одновременно, поэтому обработчик, выводящий сообщения, должен
+ * в конце вызвать {@link #flush()}: сообщения, переданные в очередь до перехода
+ * к выводу в вызывающем потоке, иначе могут быть потеряны.
  */
 public class Logger {
+	/**
+	 * Уровни сообщений. Выводятся сообщения уровней до {@link GlobalOptions#LOG_LEVEL} включительно.
+	 */
+	public enum Level {
+		// Ошибки
+		ERROR,
+		// Сообщения о работе программы
+		INFO,
+		// Сообщения о ходе генерации каждого извещения
+		TRACK,
+		// Полные трассировки стека ошибок
+		DEBUG;
+
+		/**
+		 * @param value Значение параметра --log-level
+		 * @return Уровень или null, если значение неизвестно
+		 */
+		public static Level fromCli(String value) {
+			for (Level level : values())
+				if (level.name().equalsIgnoreCase(value))
+					return level;
+			return null;
+		}
+	}
+
+	/**
+	 * Сообщение, переданное потоку вывода.
+	 */
+	private static class Event {
+		private final Level level;
+		private final long time;
+		private final String thread;
+		private final String trackingCode;
+		private final Stage stage;
+		private final String message;
+		private final Throwable exception;
+		// Для служебного сообщения flush(): отмечается после вывода всех предыдущих
+		private final CountDownLatch flushed;
+
+		private Event(Level level, String trackingCode, Stage stage, String message, Throwable exception,
+					  CountDownLatch flushed) {
+			this.level = level;
+			this.time = System.currentTimeMillis();
+			this.thread = Thread.currentThread().getName();
+			this.trackingCode = trackingCode;
+			this.stage = stage;
+			this.message = message;
+			this.exception = exception;
+			this.flushed = flushed;
+		}
+	}
+
+	private static final RingBuffer<Event> buffer = new RingBuffer<>(Constants.LOG_BUFFER_SIZE);
+	// Количество отброшенных сообщений и сколько из них уже выведено в сообщении об этом
+	private static final AtomicLong dropped = new AtomicLong();
+	private static long droppedReported; // Защищено lock
+
+	private static final Thread writer;
+	// Порядок вывода сообщений потоком вывода и после перехода к выводу в вызывающем потоке
+	private static final Object lock = new Object();
+	// Поток вывода ждёт новых сообщений
+	private static volatile boolean waiting;
+	// Программа завершается: сообщения выводятся сразу
+	private static volatile boolean synchronous;
+
+	static {
+		writer = new Thread(Logger::writeEvents, "Logger Thread");
+		writer.setDaemon(true);
+		writer.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			flush();
+			synchronous = true;
+			// Сообщения, переданные в очередь другими обработчиками до перехода
+			flush();
+			reportDropped();
+		}, "Logger Shutdown Thread"));
+	}
+
+	/**
+	 * Возвращает поток для вывода сообщений. Если документ записывается
+	 * в стандартный вывод, сообщения выводятся в {@link System#err}.
+	 * @return Поток для вывода сообщений
+	 */
+	private static PrintStream out() {
+		return GlobalOptions.STDOUT ? System.err : System.out;
+	}
+
+	/**
+	 * Проверяет, выводятся ли сообщения уровня. Учитывает {@link GlobalOptions#QUIET}.
+	 * @param level Уровень
+	 * @return true, если сообщения уровня выводятся
+	 */
+	public static boolean isEnabled(Level level) {
+		return !GlobalOptions.QUIET && level.compareTo(GlobalOptions.LOG_LEVEL) <= 0;
+	}
+
 	/**
 	 * Выводит отладочное сообщение с кодом отслеживания отправления.
-	 * Учитывает {@link dev.kerastinell.pochtaizv.values.GlobalOptions#QUIET}.
 	 * @param trackingCode Код отслеживания отправления
 	 * @param message Текст сообщения
 	 */
-	public static synchronized void track(String trackingCode, String message) {
-		if (!GlobalOptions.QUIET)
-			System.out.printf("[%s] %s%n", trackingCode, message);
+	public static void track(String trackingCode, String message) {
+		track(trackingCode, null, message);
 	}
 
 	/**
-	 * Выводит сообщение.
+	 * Выводит отладочное сообщение с кодом отслеживания отправления и этапом генерации извещения.
+	 * @param trackingCode Код отслеживания отправления
+	 * @param stage Этап или null
+	 * @param message Текст сообщения
+	 */
+	public static void track(String trackingCode, Stage stage, String message) {
+		if (isEnabled(Level.TRACK))
+			log(new Event(Level.TRACK, trackingCode, stage, message, null, null));
+	}
+
+	/**
+	 * Выводит сообщение и ожидает, пока будут выведены все предыдущие.
+	 * Используется перед запросом ввода данных у пользователя.
 	 * @param message Текст сообщения
 	 */
 	public static void ask(String message) {
-		System.out.print(message);
+		flush();
+		out().print(message);
+		out().flush();
 	}
 
 	/**
-	 * Выводит сообщение, учитывая {@link dev.kerastinell.pochtaizv.values.GlobalOptions#QUIET}.
+	 * Выводит сообщение о работе программы.
 	 * @param message Текст сообщения
 	 */
 	public static void verbose(String message) {
-		if (!GlobalOptions.QUIET)
-			System.out.println(message);
+		if (isEnabled(Level.INFO))
+			log(new Event(Level.INFO, null, null, message, null, null));
 	}
 
 	/**
-	 * Выводит ошибку в {@link System#err}, учитывая {@link dev.kerastinell.pochtaizv.values.GlobalOptions#QUIET}.
+	 * Выводит отчёт, который пользователь запросил явно, например --stats.
+	 * Отчёт выводится независимо от уровня сообщений и {@link GlobalOptions#QUIET}.
+	 * @param message Текст отчёта
+	 */
+	public static void report(String message) {
+		log(new Event(Level.INFO, null, null, message, null, null));
+	}
+
+	/**
+	 * Выводит ошибку в {@link System#err}.
 	 * @param message Текст ошибки
 	 */
 	public static void error(String message) {
-		if (!GlobalOptions.QUIET)
-			System.err.println(message);
+		error(message, null);
 	}
 
 	/**
-	 * Выводит ошибку в {@link System#err}, учитывая {@link dev.kerastinell.pochtaizv.values.GlobalOptions#QUIET}.
+	 * Выводит ошибку и её причины в {@link System#err}. Трассировка стека
+	 * выводится только на уровне {@link Level#DEBUG}.
 	 * @param message Текст ошибки
-	 * @param exception Ошибка
+	 * @param exception Ошибка или null
+	 */
+	public static void error(String message, Throwable exception) {
+		if (isEnabled(Level.ERROR))
+			log(new Event(Level.ERROR, null, null, message, exception, null));
+	}
+
+	/**
+	 * Ожидает, пока поток вывода выведет все переданные ему сообщения,
+	 * в том числе после перехода к выводу в вызывающем потоке.
+	 */
+	public static void flush() {
+		if (Thread.currentThread() == writer)
+			return;
+
+		final CountDownLatch flushed = new CountDownLatch(1);
+		offer(new Event(Level.ERROR, null, null, null, null, flushed));
+		try {
+			flushed.await(Constants.LOG_FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Передаёт сообщение потоку вывода, а при завершении программы выводит его сразу.
+	 */
+	private static void log(Event event) {
+		if (synchronous) {
+			synchronized (lock) {
+				write(event);
+			}
+			return;
+		}
+
+		offer(event);
+	}
+
+	/**
+	 * Помещает сообщение в очередь потока вывода. Ошибки ожидают места в очереди,
+	 * остальные сообщения при заполненной очереди отбрасываются.
+	 */
+	private static void offer(Event event) {
+		while (!buffer.offer(event)) {
+			if (event.level != Level.ERROR) {
+				dropped.incrementAndGet();
+				return;
+			}
+			LockSupport.unpark(writer);
+			Thread.yield();
+		}
+
+		if (waiting)
+			LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Основной цикл потока вывода.
+	 */
+	private static void writeEvents() {
+		while (true) {
+			final Event event = buffer.poll();
+			if (event != null) {
+				synchronized (lock) {
+					write(event);
+				}
+				continue;
+			}
+
+			// Очередь пуста: вывести количество отброшенных сообщений и ждать новых
+			reportDropped();
+
+			waiting = true;
+			if (buffer.isEmpty())
+				LockSupport.park(Logger.class);
+			waiting = false;
+		}
+	}
+
+	/**
+	 * Выводит количество сообщений, отброшенных с предыдущего вызова.
 	 */
-	public static void error(String message, Exception exception) {
-		if (!GlobalOptions.QUIET) {
-			System.err.println(message);
-			exception.printStackTrace();
+	private static void reportDropped() {
+		synchronized (lock) {
+			final long droppedNow = dropped.get();
+			if (droppedNow != droppedReported && isEnabled(Level.INFO))
+				write(new Event(Level.INFO, null, null,
+						"Пропущено сообщений из-за переполнения очереди: " + (droppedNow - droppedReported), null, null));
+			droppedReported = droppedNow;
+		}
+	}
+
+	/**
+	 * Выводит сообщение в текстовом виде или в формате JSON Lines.
+	 */
+	private static void write(Event event) {
+		if (event.flushed != null) {
+			event.flushed.countDown();
+			return;
+		}
+
+		final PrintStream stream = event.level == Level.ERROR ? System.err : out();
+		final boolean stackTrace = event.exception != null && isEnabled(Level.DEBUG);
+
+		if (GlobalOptions.LOG_JSON) {
+			final StringBuilder json = new StringBuilder("{\"time\":\"").append(Instant.ofEpochMilli(event.time))
+					.append("\",\"level\":\"").append(event.level.name().toLowerCase())
+					.append("\",\"thread\":").append(quote(event.thread));
+			if (event.trackingCode != null)
+				json.append(",\"track\":").append(quote(event.trackingCode));
+			if (event.stage != null)
+				json.append(",\"stage\":\"").append(event.stage.name().toLowerCase()).append('"');
+			json.append(",\"message\":").append(quote(event.message));
+			if (event.exception != null)
+				json.append(",\"error\":").append(quote(describe(event.exception)));
+			if (stackTrace)
+				json.append(",\"stackTrace\":").append(quote(stackTrace(event.exception)));
+			stream.println(json.append('}'));
+			return;
+		}
+
+		if (event.trackingCode != null)
+			stream.printf("[%s] %s%n", event.trackingCode, event.message);
+		else if (event.exception == null)
+			stream.println(event.message);
+		else if (stackTrace)
+			stream.print(event.message + System.lineSeparator() + stackTrace(event.exception));
+		else stream.printf("%s (%s)%n", event.message, describe(event.exception));
+	}
+
+	/**
+	 * @return Ошибка и все её причины в одну строку
+	 */
+	private static String describe(Throwable exception) {
+		final StringBuilder description = new StringBuilder(exception.toString());
+		for (Throwable cause = exception.getCause(); cause != null && cause != cause.getCause(); cause = cause.getCause())
+			description.append(" <- ").append(cause);
+		return description.toString();
+	}
+
+	private static String stackTrace(Throwable exception) {
+		final StringWriter text = new StringWriter();
+		exception.printStackTrace(new PrintWriter(text));
+		return text.toString();
+	}
+
+	/**
+	 * @return Строка в кавычках для JSON
+	 */
+	private static String quote(String value) {
+		if (value == null)
+			return "null";
+
+		final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					quoted.append("\\\"");
+					break;
+				case '\\':
+					quoted.append("\\\\");
+					break;
+				case '\n':
+					quoted.append("\\n");
+					break;
+				case '\r':
+					quoted.append("\\r");
+					break;
+				case '\t':
+					quoted.append("\\t");
+					break;
+				default:
+					if (c < 0x20)
+						quoted.append(String.format("\\u%04x", (int) c));
+					else quoted.append(c);
+			}
 		}
+		return quoted.append('"').toString();
 	}
 }
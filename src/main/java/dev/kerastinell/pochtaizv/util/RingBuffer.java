@@ -0,0 +1,86 @@
+package dev.kerastinell.pochtaizv.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченная очередь без блокировок для многих писателей и одного читателя.
+ *
+ * Каждая ячейка кольцевого массива хранит номер позиции, которую она ожидает:
+ * писатель занимает позицию сравнением с обменом и публикует элемент, увеличивая
+ * номер ячейки, а читатель забирает элемент, только когда номер это подтверждает.
+ * Если очередь заполнена, {@link #offer(Object)} сразу возвращает false, поэтому
+ * писатели никогда не ждут друг друга или читателя.
+ * @param <T> Тип элементов
+ */
+public class RingBuffer<T> {
+	private final int mask;
+	private final AtomicReferenceArray<T> elements;
+	private final AtomicLongArray sequences;
+	// Следующая позиция для записи
+	private final AtomicLong tail = new AtomicLong();
+	// Следующая позиция для чтения. Изменяется только читателем
+	private long head;
+
+	/**
+	 * @param capacity Вместимость, округляется вверх до степени двойки
+	 */
+	public RingBuffer(int capacity) {
+		final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = size - 1;
+		elements = new AtomicReferenceArray<>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * Добавляет элемент в очередь. Может вызываться из любых потоков.
+	 * @param element Элемент
+	 * @return false, если очередь заполнена и элемент не добавлен
+	 */
+	public boolean offer(T element) {
+		long position = tail.get();
+		while (true) {
+			final int index = (int) position & mask;
+			final long difference = sequences.get(index) - position;
+
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements.set(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (difference < 0) {
+				// Ячейку ещё не освободил читатель: очередь заполнена
+				return false;
+			}
+			position = tail.get();
+		}
+	}
+
+	/**
+	 * Забирает первый элемент очереди. Должен вызываться только из одного потока.
+	 * @return Элемент или null, если очередь пуста
+	 */
+	public T poll() {
+		final int index = (int) head & mask;
+		if (sequences.get(index) != head + 1)
+			return null;
+
+		final T element = elements.get(index);
+		elements.set(index, null);
+		sequences.set(index, head + mask + 1);
+		head++;
+		return element;
+	}
+
+	/**
+	 * Проверяет, пуста ли очередь. Должен вызываться только из потока-читателя.
+	 * @return true, если {@link #poll()} вернёт null
+	 */
+	public boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+}
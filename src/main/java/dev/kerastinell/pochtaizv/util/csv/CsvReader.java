@@ -0,0 +1,86 @@
+package dev.kerastinell.pochtaizv.util.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый разборщик CSV (RFC 4180), считывающий по одной записи.
+ *
+ * Значения могут быть заключены в двойные кавычки, тогда они могут содержать
+ * разделитель, переводы строк и кавычки, записанные дважды. Разделитель
+ * (запятая, точка с запятой или табуляция) определяется по первой записи:
+ * таблицы, сохранённые русскоязычным Excel, разделены точкой с запятой.
+ */
+public class CsvReader {
+	private static final String DELIMITERS = ",;\t";
+
+	private final Reader reader;
+	private char delimiter; // 0, пока разделитель не определён
+	private int next = -2; // Следующий символ; -2 - ещё не считан
+
+	/**
+	 * @param reader Источник текста. Для производительности следует передавать буферизованный
+	 */
+	public CsvReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Считывает следующую запись.
+	 * @return Значения записи или null, если записей больше нет
+	 */
+	public List<String> readRecord() throws IOException {
+		if (peek() == -1)
+			return null;
+
+		final ArrayList<String> record = new ArrayList<>();
+		final StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+
+		while (true) {
+			final int c = read();
+
+			if (quoted) {
+				if (c == -1)
+					break;
+				if (c != '"')
+					value.append((char) c);
+				else if (peek() == '"')
+					value.append((char) read());
+				else quoted = false;
+				continue;
+			}
+
+			if (c == -1 || c == '\n' || c == '\r') {
+				if (c == '\r' && peek() == '\n')
+					read();
+				break;
+			}
+
+			if (c == '"' && value.length() == 0)
+				quoted = true;
+			else if (c == delimiter || (delimiter == 0 && DELIMITERS.indexOf(c) != -1)) {
+				delimiter = (char) c;
+				record.add(value.toString());
+				value.setLength(0);
+			} else value.append((char) c);
+		}
+
+		record.add(value.toString());
+		return record;
+	}
+
+	private int peek() throws IOException {
+		if (next == -2)
+			next = reader.read();
+		return next;
+	}
+
+	private int read() throws IOException {
+		final int c = peek();
+		next = -2;
+		return c;
+	}
+}
@@ -7,6 +7,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Утилиты для ввода-вывода
@@ -26,7 +27,7 @@ public class IoUtils {
 		}
 
 		int len;
-		final byte[] buffer = new byte[1024];
+		final byte[] buffer = new byte[8192];
 		while ((len = src.read(buffer)) != -1)
 			dst.write(buffer, 0, len);
 
@@ -63,6 +64,20 @@ public class IoUtils {
 			response.close();
 	}
 
+	/**
+	 * Пытается удалить файл, не сообщая об ошибке.
+	 * @param path Путь к файлу. Если path не определён, ничего не произойдёт.
+	 */
+	public static void deleteQuietly(Path path) {
+		if (path == null)
+			return;
+
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException ignored) {
+		}
+	}
+
 	/**
 	 * Получает доступ к вводу пользователя.
 	 * @return BufferedReader, из которого считывается ввод пользователя
@@ -83,6 +98,17 @@ public class IoUtils {
 		return PathProvider.getInstance().get(name);
 	}
 
+	/**
+	 * Перечисляет файлы в директории внутренних ресурсов, включая вложенные директории.
+	 * В отличие от {@link #getPath(String)} не требует файловой системы внутри .jar.
+	 * @param directory Путь к директории внутренних ресурсов
+	 * @return Пути к файлам относительно директории, разделённые "/"
+	 * @throws IOException Если директория не найдена или не может быть прочитана
+	 */
+	public static List<String> list(String directory) throws IOException {
+		return PathProvider.getInstance().list(directory);
+	}
+
 	/**
 	 * Открывает внутренний ресурс на чтение и возвращает поток.
 	 * @see IoUtils#open(String)
@@ -102,8 +128,7 @@ public class IoUtils {
 	 * @return Поток для чтения данных
 	 */
 	public static InputStream open(String name) {
-		if (name.startsWith("/")) name = name.substring(1);
-		return ClassLoader.getSystemResourceAsStream(name);
+		return IoUtils.class.getResourceAsStream(name.startsWith("/") ? name : "/" + name);
 	}
 
 	/**
@@ -113,8 +138,18 @@ public class IoUtils {
 	 * @throws IOException При ошибке чтения
 	 */
 	public static String readString(InputStream input) throws IOException {
+		return new String(readBytes(input), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Считывает все данные из потока.
+	 * @param input Входной поток
+	 * @return Считанные данные
+	 * @throws IOException При ошибке чтения
+	 */
+	public static byte[] readBytes(InputStream input) throws IOException {
 		ByteArrayOutputStream output = new ByteArrayOutputStream();
 		transfer(input, output);
-		return output.toString(StandardCharsets.UTF_8.name());
+		return output.toByteArray();
 	}
 }
@@ -0,0 +1,76 @@
+package dev.kerastinell.pochtaizv.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Заранее сжатый элемент ZIP-архива. Хранит сжатые данные вместе с
+ * контрольной суммой и размерами, благодаря чему может многократно
+ * копироваться в архивы через {@link ZipWriter} без повторного сжатия.
+ */
+public class PackedEntry {
+	final String name; // Путь к файлу внутри архива
+	final int method; // Метод сжатия: ZipEntry.STORED или ZipEntry.DEFLATED
+	final long crc; // CRC-32 исходных данных
+	final long size; // Размер исходных данных
+	final byte[] data; // Данные в том виде, в котором они записываются в архив
+
+	private PackedEntry(String name, int method, long crc, long size, byte[] data) {
+		this.name = name;
+		this.method = method;
+		this.crc = crc;
+		this.size = size;
+		this.data = data;
+	}
+
+	/**
+	 * Сжимает данные для последующей записи в архив.
+	 * @param name Путь к файлу внутри архива
+	 * @param content Исходные данные
+	 * @return Сжатый элемент архива
+	 */
+	public static PackedEntry deflate(String name, byte[] content) {
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+		final byte[] buffer = new byte[8192];
+
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			while (!deflater.finished()) {
+				int len = deflater.deflate(buffer);
+				compressed.write(buffer, 0, len);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		return new PackedEntry(name, ZipEntry.DEFLATED, crc(content), content.length, compressed.toByteArray());
+	}
+
+	/**
+	 * Подготавливает данные для записи в архив без сжатия.
+	 * @param name Путь к файлу внутри архива
+	 * @param content Исходные данные
+	 * @return Несжатый элемент архива
+	 */
+	public static PackedEntry store(String name, byte[] content) {
+		return new PackedEntry(name, ZipEntry.STORED, crc(content), content.length, content);
+	}
+
+	/**
+	 * Возвращает путь к файлу внутри архива.
+	 * @return Путь к файлу внутри архива
+	 */
+	public String getName() {
+		return name;
+	}
+
+	private static long crc(byte[] content) {
+		final CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+}
@@ -3,18 +3,27 @@ package dev.kerastinell.pochtaizv.util.io;
 import dev.kerastinell.pochtaizv.util.Logger;
 
 import java.io.IOException;
+import java.net.JarURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.*;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Синглтон для предоставления доступа к внутренним ресурсам.
  * Доступ к классу есть только у {@link dev.kerastinell.pochtaizv.util.io.IoUtils}.
  */
 class PathProvider {
+	private URI rootUri; // Расположение ресурсов этого пакета
 	private boolean isJar; // Флаг, указывающий на нахождение ресурсов внутри .jar
-	private FileSystem jarFS; // Реализация файловой системы внутри .jar
+	private FileSystem jarFS; // Реализация файловой системы внутри .jar, создаётся при первом обращении
 
 	private static final PathProvider instance = new PathProvider();
 	static PathProvider getInstance() {
@@ -23,16 +32,16 @@ class PathProvider {
 
 	/**
 	 * При вызове конструктора проверяется, находятся ли ресурсы в .jar (т.е. программа запущена сама по себе)
-	 * или в иной директории в распакованном виде (т.е. программа запущена в среде разработки). Если ресурсы
-	 * находятся в .jar, то устанавливается соответствующий флаг и единоразово инициализируется jarFS для
-	 * предоставления дальнейшего доступа.
+	 * или в иной директории в распакованном виде (т.е. программа запущена в среде разработки).
+	 * Файловая система внутри .jar требует загрузки модуля zipfs и чтения всего каталога архива,
+	 * поэтому создаётся только при первом вызове {@link #get(String)}. Внутренние ресурсы
+	 * читаются и перечисляются без неё, см. {@link IoUtils#open(String)} и {@link #list(String)}.
 	 */
 	private PathProvider() {
 		try {
-			URI rootUri = getClass().getResource("").toURI();
-			if ((isJar = rootUri.getScheme().equals("jar")))
-				jarFS = FileSystems.newFileSystem(rootUri, Collections.emptyMap());
-		} catch (IOException | URISyntaxException exception) {
+			rootUri = getClass().getResource("").toURI();
+			isJar = rootUri.getScheme().equals("jar");
+		} catch (URISyntaxException exception) {
 			Logger.error("Невозможно получить доступ к внутренним ресурсам!", exception);
 		}
 	}
@@ -44,10 +53,66 @@ class PathProvider {
 	 */
 	Path get(String name) {
 		try {
-			return isJar? jarFS.getPath(name) : Paths.get(getClass().getResource(name).toURI());
-		} catch (URISyntaxException exception) {
+			return isJar? getJarFS().getPath(name) : Paths.get(getClass().getResource(name).toURI());
+		} catch (IOException | URISyntaxException exception) {
 			Logger.error("Невозможно получить доступ к внутренним ресурсам!", exception);
 			return null;
 		}
 	}
+
+	/**
+	 * Перечисляет файлы в директории внутренних ресурсов, включая вложенные директории.
+	 * @param directory Путь к директории внутренних ресурсов
+	 * @return Пути к файлам относительно директории, разделённые "/"
+	 * @throws IOException Если директория не найдена или не может быть прочитана
+	 */
+	List<String> list(String directory) throws IOException {
+		if (directory.startsWith("/")) directory = directory.substring(1);
+		if (!directory.endsWith("/")) directory += "/";
+
+		if (!isJar) {
+			// Ресурсы ищутся загрузчиком этого класса, а не системным: программа
+			// может быть загружена другим загрузчиком, например встроена в сервер приложений
+			final URL url = getClass().getResource("/" + directory);
+			if (url == null)
+				throw new NoSuchFileException(directory);
+
+			final Path root;
+			try {
+				root = Paths.get(url.toURI());
+			} catch (URISyntaxException exception) {
+				throw new IOException(exception);
+			}
+
+			try (Stream<Path> walk = Files.walk(root)) {
+				return walk.filter(Files::isRegularFile)
+						// В Windows используется системный разделитель директорий
+						.map(path -> root.relativize(path).toString().replace("\\", "/"))
+						.collect(Collectors.toList());
+			}
+		}
+
+		// Записи .jar перечисляются через JarFile, которому не нужен модуль zipfs
+		final JarURLConnection connection = (JarURLConnection) rootUri.toURL().openConnection();
+		final ArrayList<String> names = new ArrayList<>();
+		for (Enumeration<JarEntry> entries = connection.getJarFile().entries(); entries.hasMoreElements(); ) {
+			final JarEntry entry = entries.nextElement();
+			if (!entry.isDirectory() && entry.getName().startsWith(directory))
+				names.add(entry.getName().substring(directory.length()));
+		}
+
+		if (names.isEmpty())
+			throw new NoSuchFileException(directory);
+		return names;
+	}
+
+	/**
+	 * Создаёт файловую систему внутри .jar при первом обращении.
+	 * @return Файловая система внутри .jar
+	 */
+	private synchronized FileSystem getJarFS() throws IOException {
+		if (jarFS == null)
+			jarFS = FileSystems.newFileSystem(rootUri, Collections.emptyMap());
+		return jarFS;
+	}
 }
@@ -0,0 +1,115 @@
+package dev.kerastinell.pochtaizv.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Кодировщик чёрно-белых изображений в формат PNG с глубиной цвета 1 бит.
+ *
+ * Не использует AWT и ImageIO, не хранит состояния между вызовами
+ * и может использоваться одновременно из разных потоков.
+ */
+public class PngEncoder {
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+	private static final byte BIT_DEPTH = 1;
+	private static final byte COLOR_TYPE_GRAYSCALE = 0;
+	private static final byte FILTER_NONE = 0;
+
+	/**
+	 * Возвращает длину строки изображения в байтах.
+	 * @param width Ширина изображения в пикселях
+	 * @return Длина строки в байтах без байта фильтра
+	 */
+	public static int getRowLength(int width) {
+		return (width + 7) / 8;
+	}
+
+	/**
+	 * Упаковывает строку пикселей в формат PNG: 8 пикселей в байте, старший бит первый,
+	 * установленный бит соответствует белому пикселю.
+	 * @param black Флаги чёрных пикселей строки
+	 * @return Упакованная строка
+	 */
+	public static byte[] packRow(boolean[] black) {
+		final byte[] row = new byte[getRowLength(black.length)];
+		for (int x = 0; x < black.length; x++)
+			if (!black[x])
+				row[x >> 3] |= 0x80 >>> (x & 7);
+		return row;
+	}
+
+	/**
+	 * Кодирует изображение в PNG.
+	 * @param width Ширина изображения в пикселях
+	 * @param rows Упакованные строки изображения сверху вниз (см. {@link #packRow(boolean[])}).
+	 *             Одинаковые строки могут быть представлены одним и тем же массивом.
+	 * @return Содержимое PNG-файла
+	 */
+	public static byte[] encode(int width, byte[][] rows) {
+		final int rowLength = getRowLength(width);
+
+		// Сжатие строк изображения, каждой предшествует байт фильтра
+		final byte[] filter = {FILTER_NONE};
+		final ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		final byte[] buffer = new byte[1024];
+		try {
+			for (byte[] row : rows) {
+				deflate(deflater, filter, 1, buffer, imageData);
+				deflate(deflater, row, rowLength, buffer, imageData);
+			}
+
+			deflater.finish();
+			while (!deflater.finished())
+				imageData.write(buffer, 0, deflater.deflate(buffer));
+		} finally {
+			deflater.end();
+		}
+
+		final byte[] header = new byte[13];
+		writeInt(header, 0, width);
+		writeInt(header, 4, rows.length);
+		header[8] = BIT_DEPTH;
+		header[9] = COLOR_TYPE_GRAYSCALE;
+		// Метод сжатия, метод фильтрации и чересстрочность - 0
+
+		final ByteArrayOutputStream png = new ByteArrayOutputStream(imageData.size() + 64);
+		png.write(SIGNATURE, 0, SIGNATURE.length);
+		writeChunk(png, "IHDR", header);
+		writeChunk(png, "IDAT", imageData.toByteArray());
+		writeChunk(png, "IEND", new byte[0]);
+		return png.toByteArray();
+	}
+
+	private static void deflate(Deflater deflater, byte[] data, int length, byte[] buffer, ByteArrayOutputStream output) {
+		deflater.setInput(data, 0, length);
+		while (!deflater.needsInput())
+			output.write(buffer, 0, deflater.deflate(buffer));
+	}
+
+	private static void writeChunk(ByteArrayOutputStream output, String type, byte[] data) {
+		final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		final byte[] number = new byte[4];
+
+		final CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+
+		writeInt(number, 0, data.length);
+		output.write(number, 0, 4);
+		output.write(typeBytes, 0, typeBytes.length);
+		output.write(data, 0, data.length);
+		writeInt(number, 0, (int) crc.getValue());
+		output.write(number, 0, 4);
+	}
+
+	private static void writeInt(byte[] array, int offset, int value) {
+		array[offset] = (byte) (value >>> 24);
+		array[offset + 1] = (byte) (value >>> 16);
+		array[offset + 2] = (byte) (value >>> 8);
+		array[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,251 @@
+package dev.kerastinell.pochtaizv.util.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Минимальная реализация записи ZIP-архива.
+ *
+ * В отличие от {@link java.util.zip.ZipOutputStream} позволяет копировать в архив
+ * заранее сжатые элементы {@link PackedEntry} как есть, без повторного сжатия.
+ * Остальные элементы сжимаются на лету: данные записываются через методы
+ * {@link OutputStream} между вызовами {@link #putNextEntry(String)} и {@link #closeEntry()}.
+ */
+public class ZipWriter extends OutputStream {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	private static final int FLAG_DATA_DESCRIPTOR = 0x0008; // Размеры и CRC записываются после данных
+	private static final int FLAG_UTF8 = 0x0800; // Имена файлов в кодировке UTF-8
+
+	private final OutputStream output;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final byte[] deflateBuffer = new byte[8192];
+	private final CRC32 crc = new CRC32();
+
+	// Дата и время изменения файлов в формате MS-DOS, одинаковые для всех элементов
+	private final int dosTime;
+	private final int dosDate;
+
+	// Уже записанные элементы для центрального каталога
+	private final ArrayList<Record> records = new ArrayList<>();
+	// Элемент, который сжимается на лету в данный момент
+	private Record current;
+	// Количество байт, записанных в выходной поток
+	private long written;
+	private boolean closed;
+
+	public ZipWriter(OutputStream output) {
+		this.output = new BufferedOutputStream(output, 16384);
+
+		final LocalDateTime now = LocalDateTime.now();
+		dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+		dosDate = Math.max(now.getYear() - 1980, 0) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+	}
+
+	/**
+	 * Копирует в архив заранее сжатый элемент.
+	 * @param entry Элемент архива
+	 * @throws IOException При ошибке записи
+	 */
+	public void putPackedEntry(PackedEntry entry) throws IOException {
+		closeEntry();
+
+		final Record record = new Record(entry.name, entry.method, FLAG_UTF8, written);
+		record.crc = entry.crc;
+		record.size = entry.size;
+		record.compressedSize = entry.data.length;
+
+		writeLocalHeader(record);
+		writeBytes(entry.data, 0, entry.data.length);
+		records.add(record);
+	}
+
+	/**
+	 * Начинает запись нового элемента, который будет сжат на лету.
+	 * Незавершённый предыдущий элемент закрывается автоматически.
+	 * @param name Путь к файлу внутри архива
+	 * @throws IOException При ошибке записи
+	 */
+	public void putNextEntry(String name) throws IOException {
+		closeEntry();
+
+		current = new Record(name, ZipEntry.DEFLATED, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR, written);
+		writeLocalHeader(current);
+		crc.reset();
+		deflater.reset();
+	}
+
+	/**
+	 * Завершает запись текущего элемента, если такой есть.
+	 * @throws IOException При ошибке записи
+	 */
+	public void closeEntry() throws IOException {
+		if (current == null)
+			return;
+
+		deflater.finish();
+		while (!deflater.finished())
+			deflate();
+
+		current.crc = crc.getValue();
+		current.size = deflater.getBytesRead();
+		current.compressedSize = deflater.getBytesWritten();
+
+		writeInt(DATA_DESCRIPTOR_SIGNATURE);
+		writeInt((int) current.crc);
+		writeInt((int) current.compressedSize);
+		writeInt((int) current.size);
+
+		records.add(current);
+		current = null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (current == null)
+			throw new IOException("Нет открытого элемента архива");
+		if (len == 0)
+			return;
+
+		crc.update(b, off, len);
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput())
+			deflate();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		output.flush();
+	}
+
+	/**
+	 * Завершает текущий элемент, записывает центральный каталог и закрывает выходной поток.
+	 * @throws IOException При ошибке записи
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		try {
+			closeEntry();
+
+			final long centralOffset = written;
+			for (Record record : records)
+				writeCentralHeader(record);
+			final long centralSize = written - centralOffset;
+
+			writeInt(END_SIGNATURE);
+			writeShort(0); // Номер диска
+			writeShort(0); // Диск с центральным каталогом
+			writeShort(records.size());
+			writeShort(records.size());
+			writeInt((int) centralSize);
+			writeInt((int) centralOffset);
+			writeShort(0); // Длина комментария
+		} finally {
+			deflater.end();
+			output.close();
+		}
+	}
+
+	private void deflate() throws IOException {
+		final int len = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+		writeBytes(deflateBuffer, 0, len);
+	}
+
+	private void writeLocalHeader(Record record) throws IOException {
+		final boolean descriptor = (record.flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+		writeInt(LOCAL_HEADER_SIGNATURE);
+		writeShort(record.versionNeeded());
+		writeShort(record.flags);
+		writeShort(record.method);
+		writeShort(dosTime);
+		writeShort(dosDate);
+		// При наличии дескриптора данных значения записываются после сжатых данных
+		writeInt(descriptor ? 0 : (int) record.crc);
+		writeInt(descriptor ? 0 : (int) record.compressedSize);
+		writeInt(descriptor ? 0 : (int) record.size);
+		writeShort(record.name.length);
+		writeShort(0); // Длина дополнительного поля
+		writeBytes(record.name, 0, record.name.length);
+	}
+
+	private void writeCentralHeader(Record record) throws IOException {
+		writeInt(CENTRAL_HEADER_SIGNATURE);
+		writeShort(20); // Версия, которой создан архив
+		writeShort(record.versionNeeded());
+		writeShort(record.flags);
+		writeShort(record.method);
+		writeShort(dosTime);
+		writeShort(dosDate);
+		writeInt((int) record.crc);
+		writeInt((int) record.compressedSize);
+		writeInt((int) record.size);
+		writeShort(record.name.length);
+		writeShort(0); // Длина дополнительного поля
+		writeShort(0); // Длина комментария
+		writeShort(0); // Номер диска
+		writeShort(0); // Внутренние атрибуты
+		writeInt(0); // Внешние атрибуты
+		writeInt((int) record.offset);
+		writeBytes(record.name, 0, record.name.length);
+	}
+
+	private void writeShort(int value) throws IOException {
+		output.write(value & 0xff);
+		output.write((value >>> 8) & 0xff);
+		written += 2;
+	}
+
+	private void writeInt(int value) throws IOException {
+		writeShort(value & 0xffff);
+		writeShort((value >>> 16) & 0xffff);
+	}
+
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		output.write(b, off, len);
+		written += len;
+	}
+
+	/**
+	 * Сведения об элементе архива для центрального каталога.
+	 */
+	private static class Record {
+		final byte[] name;
+		final int method;
+		final int flags;
+		final long offset; // Смещение локального заголовка от начала архива
+		long crc;
+		long size;
+		long compressedSize;
+
+		Record(String name, int method, int flags, long offset) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.method = method;
+			this.flags = flags;
+			this.offset = offset;
+		}
+
+		int versionNeeded() {
+			return method == ZipEntry.DEFLATED ? 20 : 10;
+		}
+	}
+}
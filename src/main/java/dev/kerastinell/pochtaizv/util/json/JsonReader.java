@@ -0,0 +1,344 @@
+package dev.kerastinell.pochtaizv.util.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Потоковый (pull) парсер JSON.
+ *
+ * Читает документ по одному элементу прямо из потока, не строя дерево
+ * объектов. Ненужные значения пропускаются методом {@link #skipValue()}
+ * без создания строк, поэтому разбор больших ответов, из которых нужна
+ * лишь малая часть, почти не выделяет памяти.
+ *
+ * Парсер нестрогий: запятые и двоеточия между элементами не проверяются.
+ */
+public class JsonReader {
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	// Области вложенности
+	private static final int SCOPE_ARRAY = 0;
+	private static final int SCOPE_OBJECT_NAME = 1; // В объекте ожидается имя
+	private static final int SCOPE_OBJECT_VALUE = 2; // В объекте ожидается значение
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int position;
+	private int limit;
+
+	private int[] scopes = new int[32];
+	private int depth;
+
+	private final StringBuilder builder = new StringBuilder();
+
+	// Исходный текст, считанный после вызова beginCapture()
+	private StringBuilder capture;
+	private int captureStart;
+
+	public JsonReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Определяет тип следующего элемента, не считывая его.
+	 * @return Тип элемента
+	 */
+	public Token peek() throws IOException {
+		if (!skipSeparators())
+			return Token.END_DOCUMENT;
+
+		switch (buffer[position]) {
+			case '{':
+				return Token.BEGIN_OBJECT;
+			case '}':
+				return Token.END_OBJECT;
+			case '[':
+				return Token.BEGIN_ARRAY;
+			case ']':
+				return Token.END_ARRAY;
+			case '"':
+				return depth > 0 && scopes[depth - 1] == SCOPE_OBJECT_NAME ? Token.NAME : Token.STRING;
+			case 't':
+			case 'f':
+				return Token.BOOLEAN;
+			case 'n':
+				return Token.NULL;
+			default:
+				return Token.NUMBER;
+		}
+	}
+
+	/**
+	 * Проверяет, есть ли в текущем объекте или массиве ещё элементы.
+	 * @return true, если следующий элемент - не конец объекта или массива
+	 */
+	public boolean hasNext() throws IOException {
+		final Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		position++;
+		push(SCOPE_OBJECT_NAME);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		position++;
+		depth--;
+		valueConsumed();
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		position++;
+		push(SCOPE_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		position++;
+		depth--;
+		valueConsumed();
+	}
+
+	/**
+	 * Считывает имя поля объекта.
+	 * @return Имя поля
+	 */
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		final String name = readString();
+		scopes[depth - 1] = SCOPE_OBJECT_VALUE;
+		return name;
+	}
+
+	/**
+	 * Считывает строку, число или логическое значение в виде строки.
+	 * @return Значение или null, если значение равно null
+	 */
+	public String nextString() throws IOException {
+		final Token token = peek();
+		final String value;
+		switch (token) {
+			case STRING:
+				value = readString();
+				break;
+			case NUMBER:
+			case BOOLEAN:
+				value = readLiteral(true);
+				break;
+			case NULL:
+				readLiteral(false);
+				value = null;
+				break;
+			default:
+				throw new IOException("Ожидалось простое значение, найдено " + token);
+		}
+		valueConsumed();
+		return value;
+	}
+
+	/**
+	 * Пропускает следующее значение вместе со всеми вложенными элементами.
+	 */
+	public void skipValue() throws IOException {
+		int nesting = 0;
+		do {
+			switch (peek()) {
+				case BEGIN_OBJECT:
+				case BEGIN_ARRAY:
+					position++;
+					nesting++;
+					break;
+				case END_OBJECT:
+				case END_ARRAY:
+					position++;
+					nesting--;
+					break;
+				case NAME:
+				case STRING:
+					skipString();
+					break;
+				case END_DOCUMENT:
+					throw new IOException("Неожиданный конец документа");
+				default:
+					readLiteral(false);
+			}
+		} while (nesting > 0);
+		valueConsumed();
+	}
+
+	/**
+	 * Начинает запоминать исходный текст документа, начиная со следующего элемента.
+	 */
+	public void beginCapture() throws IOException {
+		skipSeparators();
+		capture = new StringBuilder();
+		captureStart = position;
+	}
+
+	/**
+	 * Прекращает запоминать исходный текст документа.
+	 * @return Текст, считанный после вызова {@link #beginCapture()}
+	 */
+	public String endCapture() {
+		capture.append(buffer, captureStart, position - captureStart);
+		final String text = capture.toString();
+		capture = null;
+		return text;
+	}
+
+	private void expect(Token expected) throws IOException {
+		final Token token = peek();
+		if (token != expected)
+			throw new IOException("Ожидалось " + expected + ", найдено " + token);
+	}
+
+	private void push(int scope) {
+		if (depth == scopes.length) {
+			final int[] grown = new int[depth * 2];
+			System.arraycopy(scopes, 0, grown, 0, depth);
+			scopes = grown;
+		}
+		scopes[depth++] = scope;
+	}
+
+	/**
+	 * После значения поля объект снова ожидает имя.
+	 */
+	private void valueConsumed() {
+		if (depth > 0 && scopes[depth - 1] == SCOPE_OBJECT_VALUE)
+			scopes[depth - 1] = SCOPE_OBJECT_NAME;
+	}
+
+	/**
+	 * Пропускает пробельные символы и разделители.
+	 * @return false, если достигнут конец потока
+	 */
+	private boolean skipSeparators() throws IOException {
+		while (true) {
+			if (position == limit && !fill())
+				return false;
+
+			final char c = buffer[position];
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == ':')
+				position++;
+			else return true;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		if (capture != null) {
+			capture.append(buffer, captureStart, limit - captureStart);
+			captureStart = 0;
+		}
+
+		position = 0;
+		limit = reader.read(buffer, 0, buffer.length);
+		if (limit <= 0) {
+			limit = 0;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Считывает строку в кавычках, обрабатывая escape-последовательности.
+	 */
+	private String readString() throws IOException {
+		builder.setLength(0);
+		position++; // Открывающая кавычка
+
+		while (true) {
+			if (position == limit && !fill())
+				throw new IOException("Незакрытая строка");
+
+			// Участок без спецсимволов копируется целиком
+			final int start = position;
+			while (position < limit && buffer[position] != '"' && buffer[position] != '\\')
+				position++;
+			builder.append(buffer, start, position - start);
+			if (position == limit)
+				continue;
+
+			if (buffer[position++] == '"')
+				return builder.toString();
+			builder.append(readEscape());
+		}
+	}
+
+	/**
+	 * Пропускает строку в кавычках, не сохраняя её.
+	 */
+	private void skipString() throws IOException {
+		position++; // Открывающая кавычка
+
+		while (true) {
+			if (position == limit && !fill())
+				throw new IOException("Незакрытая строка");
+
+			final char c = buffer[position++];
+			if (c == '"')
+				return;
+			if (c == '\\')
+				readEscape();
+		}
+	}
+
+	private char readEscape() throws IOException {
+		final char c = readChar();
+		switch (c) {
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					final int digit = Character.digit(readChar(), 16);
+					if (digit < 0)
+						throw new IOException("Неверная escape-последовательность \\u");
+					code = (code << 4) | digit;
+				}
+				return (char) code;
+			default:
+				return c; // " \ /
+		}
+	}
+
+	private char readChar() throws IOException {
+		if (position == limit && !fill())
+			throw new IOException("Неожиданный конец документа");
+		return buffer[position++];
+	}
+
+	/**
+	 * Считывает число или литерал true/false/null.
+	 * @param keep Сохранить значение
+	 * @return Значение или null, если keep == false
+	 */
+	private String readLiteral(boolean keep) throws IOException {
+		builder.setLength(0);
+
+		while (position < limit || fill()) {
+			final char c = buffer[position];
+			if (c == ',' || c == ':' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '"')
+				break;
+			if (keep)
+				builder.append(c);
+			position++;
+		}
+
+		return keep ? builder.toString() : null;
+	}
+}
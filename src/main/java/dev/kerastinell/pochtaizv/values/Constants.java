@@ -1,8 +1,7 @@
 package dev.kerastinell.pochtaizv.values;
 
-import dev.kerastinell.pochtaizv.util.io.IoUtils;
-
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
@@ -10,13 +9,26 @@ import java.time.format.DateTimeFormatter;
  * Набор значений, которые не изменяются во время работы программы.
  */
 public interface Constants {
-	// Путь к директории с шаблоном извещения
-	Path TEMPLATE_DIR_PATH = IoUtils.getPath("/template");
+	// Путь к директории внутренних ресурсов с шаблоном извещения
+	String TEMPLATE_DIR = "/template";
 	// Имя файла, в который будут заменены данные извещения
 	String TEMPLATE_XML_FILE = "content.xml";
+	// Имя файла с MIME-типом документа, который хранится в архиве без сжатия
+	String TEMPLATE_MIMETYPE_FILE = "mimetype";
 	// Имя файла с штрихкодом отправления
 	String TEMPLATE_BARCODE_FILE = "10000000000001F400000064723B2F633C7B66BB.png";
 
+	// Директория для данных, сохраняемых между запусками программы
+	Path USER_DATA_DIR_PATH = Paths.get(System.getProperty("user.home"), ".pochtaizv");
+	// Имя файла кэша данных об отправлениях и наибольшее количество записей в нём
+	String API_CACHE_FILE = "tracking.cache";
+	int API_CACHE_MAX_ENTRIES = 2000;
+	// Имя файла сессии (cookies и ссылки для отслеживания) и срок её действия в часах
+	String SESSION_FILE = "session";
+	long SESSION_MAX_AGE_HOURS = 12;
+	// Наименьший интервал между повторными инициализациями сессии, в минутах
+	long SESSION_REFRESH_MIN_INTERVAL_MINUTES = 10;
+
 	DateTimeFormatter DATE_FORMAT_INPUT = DateTimeFormatter.ofPattern("yyyy-MM-dd")
 			.withZone(ZoneId.systemDefault()); // Для форматирования даты, введённой пользователем
 	DateTimeFormatter DATE_FORMAT_STORAGE = DateTimeFormatter.ofPattern("dd.MM.yyyy")
@@ -27,6 +39,47 @@ public interface Constants {
 	int POST_ARRIVED_TYPE = 8;
 	int POST_ARRIVED_ATTR = 2;
 
+	// Адрес сервера Почты России и путь к странице отслеживания, с которой начинается сессия
+	String API_URL_DEFAULT = "https://www.pochta.ru";
+	String API_INIT_PATH = "/tracking";
+	// User agent запросов к серверу Почты России по-умолчанию
+	String API_USER_AGENT_DEFAULT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/85.0.4183.121 Safari/537.36";
+	// Порт локального сервера, подменяющего сервер Почты России (--stand-in)
+	int STAND_IN_DEFAULT_PORT = 8765;
+	// Порт локального сервера генерации извещений (--serve)
+	int SERVE_DEFAULT_PORT = 8766;
+	// Наибольший размер тела запроса к локальному серверу генерации извещений, в байтах
+	int SERVE_MAX_REQUEST_BYTES = 1024 * 1024;
+
+	// Наибольшее количество кодов отслеживания в одном запросе к серверу
+	// Почты России и разделитель кодов в поле barcodes запроса
+	int API_BATCH_SIZE = 25;
+	String API_BATCH_SEPARATOR = ",";
+	// Наибольшее количество повторов запроса и пределы паузы перед повтором в миллисекундах
+	int API_MAX_RETRIES = 3;
+	long API_RETRY_BASE_DELAY_MS = 500;
+	long API_RETRY_MAX_DELAY_MS = 10_000;
+	// Время ответа в миллисекундах, после которого сервер считается перегруженным
+	long API_SLOW_RESPONSE_MS = 5_000;
+	// Количество ошибок подряд, после которого запросы приостанавливаются, и длительность паузы в секундах
+	int API_CIRCUIT_FAILURE_THRESHOLD = 5;
+	long API_CIRCUIT_OPEN_SECONDS = 30;
+	// Наибольший интервал проверки отправления в режиме наблюдения, в минутах
+	long WATCH_MAX_INTERVAL_MINUTES = 6 * 60;
+	// Длина очереди задач заполнения извещений в расчёте на один поток
+	int RENDER_QUEUE_SIZE_PER_THREAD = 4;
+	// Как часто ожидающая загрузки пачка проверяет отмену задач, в миллисекундах
+	long FETCH_PERMIT_POLL_MS = 100;
+	// Сколько миллисекунд при завершении программы (Ctrl-C) ожидается подведение итогов
+	long SHUTDOWN_TIMEOUT_MS = 10_000;
+	// Количество задач, которые пакетная генерация (--batch) передаёт в конвейер за раз
+	int BATCH_WINDOW_SIZE = 256;
+	// Вместимость очереди сообщений логгера и наибольшее время ожидания их вывода в миллисекундах
+	int LOG_BUFFER_SIZE = 8192;
+	long LOG_FLUSH_TIMEOUT_MS = 5_000;
+	// Количество самых долгих задач, длительности этапов которых выводятся в итогах --stats
+	int STATS_SLOWEST_CODES = 10;
+
 	// Все параметры, которые пользователь может задать/ввести самостоятельно
 	String[][] USER_DEFINED_PARAMETERS = {
 			// Формат:
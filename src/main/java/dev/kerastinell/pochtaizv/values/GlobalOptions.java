@@ -1,5 +1,11 @@
 package dev.kerastinell.pochtaizv.values;
 
+import dev.kerastinell.pochtaizv.BarcodeFormat;
+import dev.kerastinell.pochtaizv.template.DocumentFormat;
+import dev.kerastinell.pochtaizv.util.Logger;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -8,6 +14,54 @@ public class GlobalOptions {
 	public static boolean EMPTY = false; // Отвечает за генерацию пустого извещения
 	public static boolean OFFLINE = false; // Отвечает за работоспособность PochtaDataFetcher
 	public static boolean NO_INPUT = false; // Отвечает за отсутствие запросов ввода данных
+	public static boolean SINGLE_FILE = false; // Отвечает за запись всех извещений в один документ
+	public static boolean STDOUT = false; // Отвечает за запись документа в стандартный вывод вместо файла
+	public static boolean NO_CACHE = false; // Отвечает за отключение кэша данных об отправлениях
+	public static boolean WATCH = false; // Отвечает за наблюдение за отправлениями до их прибытия
+	public static boolean LOG_JSON = false; // Отвечает за вывод сообщений в формате JSON Lines
+
+	// Наибольший уровень выводимых сообщений
+	public static Logger.Level LOG_LEVEL = Logger.Level.TRACK;
+
+	// Срок актуальности данных об отправлениях в кэше, в часах
+	public static long CACHE_TTL_HOURS = 24;
+	// Базовый интервал проверки отправлений в режиме наблюдения, в минутах
+	public static long WATCH_INTERVAL_MINUTES = 30;
+	// Наибольшая продолжительность наблюдения за отправлениями, в днях (0 - без ограничения)
+	public static long WATCH_MAX_DAYS = 30;
+
+	// Количество потоков, заполняющих и записывающих извещения
+	public static int THREADS = Runtime.getRuntime().availableProcessors();
+	// Срок выполнения одной задачи и всех задач вместе, в секундах (0 - без ограничения)
+	public static long JOB_TIMEOUT_SECONDS = 120;
+	public static long RUN_TIMEOUT_SECONDS = 0;
+
+	// Наибольшая частота запросов к серверу Почты России в секунду (0 - без ограничения)
+	// и наибольшее количество одновременных запросов
+	public static double API_RATE = 2;
+	public static int API_MAX_REQUESTS = 4;
+
+	// Адрес сервера, к которому обращается PochtaDataFetcher (например, локального --stand-in)
+	public static String API_URL = Constants.API_URL_DEFAULT;
+	// Директория, в которую записываются ответы сервера для --stand-in, или null
+	public static Path RECORD_DIR = null;
+
+	// Порт локального сервера генерации извещений (--serve), 0 - сервер не запускается
+	public static int SERVE_PORT = 0;
+	// Директория, внутри которой сервер генерации извещений записывает документы с указанным output
+	public static Path SERVE_DIR = Paths.get("");
+	// Файл с записями для пакетной генерации извещений (--batch), "-" - стандартный ввод, или null
+	public static String BATCH_SOURCE = null;
+
+	// Вывести время этапов генерации извещений по завершении программы
+	public static boolean STATS = false;
+	// Файл, в который записывается отчёт о времени этапов в формате JSON, или null
+	public static Path STATS_REPORT = null;
+
+	// Формат выходных документов
+	public static DocumentFormat FORMAT = DocumentFormat.ODG;
+	// Формат изображения штрихкода
+	public static BarcodeFormat BARCODE_FORMAT = BarcodeFormat.PNG;
 
 	// Эти данные не изменяются в зависимости от кода отслеживания отправлений.
 	// Ф.И.О. получателя, его адрес, данные документа, удостоверяющего личность
@@ -17,5 +71,5 @@ public class GlobalOptions {
 	public static final ArrayList<String> TRACKING_CODES = new ArrayList<>();
 
 	// User agent, используемый при запросах к серверу Почты России
-	public static String API_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/85.0.4183.121 Safari/537.36";
+	public static String API_USER_AGENT = Constants.API_USER_AGENT_DEFAULT;
 }
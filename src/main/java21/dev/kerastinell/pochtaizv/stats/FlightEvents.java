@@ -0,0 +1,59 @@
+package dev.kerastinell.pochtaizv.stats;
+
+import jdk.jfr.*;
+
+/**
+ * События JDK Flight Recorder для этапов генерации извещений.
+ *
+ * Реализация для Java 21 и новее: для каждого этапа записывается событие
+ * dev.kerastinell.pochtaizv.Stage с названием этапа и кодами отслеживания,
+ * если запись включена, например параметром -XX:StartFlightRecording.
+ * Без записи событие не создаётся.
+ */
+public class FlightEvents {
+	@Name("dev.kerastinell.pochtaizv.Stage")
+	@Label("Этап генерации извещения")
+	@Category("pochtaizv")
+	@StackTrace(false)
+	static class StageEvent extends Event {
+		@Label("Этап")
+		String stage;
+
+		@Label("Коды отслеживания")
+		String trackingCodes;
+	}
+
+	private static final EventType STAGE_EVENT_TYPE = EventType.getEventType(StageEvent.class);
+
+	/**
+	 * Начинает событие этапа, если запись событий включена.
+	 * @return Событие или null, если событие не записывается
+	 */
+	public static Object begin() {
+		if (!STAGE_EVENT_TYPE.isEnabled())
+			return null;
+
+		final StageEvent event = new StageEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Завершает и записывает событие этапа.
+	 * @param event Событие, полученное от {@link #begin()}
+	 * @param stage Этап
+	 * @param trackingCodes Коды отслеживания, к которым относится этап, через запятую
+	 */
+	public static void commit(Object event, Stage stage, String trackingCodes) {
+		if (!(event instanceof StageEvent))
+			return;
+
+		final StageEvent stageEvent = (StageEvent) event;
+		stageEvent.end();
+		if (stageEvent.shouldCommit()) {
+			stageEvent.stage = stage.getDescription();
+			stageEvent.trackingCodes = trackingCodes;
+			stageEvent.commit();
+		}
+	}
+}
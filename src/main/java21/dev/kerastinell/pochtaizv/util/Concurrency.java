@@ -0,0 +1,112 @@
+package dev.kerastinell.pochtaizv.util;
+
+import okhttp3.Dispatcher;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Создание пулов потоков для выполнения задач и запросов к серверу.
+ *
+ * Реализация для Java 21 и новее: каждая задача и каждый запрос выполняются
+ * в собственном виртуальном потоке, поэтому блокирующие ожидания (загрузка
+ * данных, ограничение частоты запросов, паузы перед повтором) не занимают
+ * потоки операционной системы, а размер пула подбирать не нужно.
+ * Загрузку ограничивает {@link dev.kerastinell.pochtaizv.values.GlobalOptions#API_MAX_REQUESTS},
+ * а заполнение извещений - количество процессоров, на которых выполняются виртуальные потоки.
+ * Количество ожидающих и выполняющихся задач заполнения ограничено так же, как в реализации
+ * для Java 8, поэтому загрузка по-прежнему приостанавливается, пока обработка её не догонит.
+ */
+public class Concurrency {
+	/**
+	 * @return true, если задачи выполняются в виртуальных потоках
+	 */
+	public static boolean isVirtual() {
+		return true;
+	}
+
+	/**
+	 * Создаёт исполнитель, запускающий каждую задачу в новом виртуальном потоке.
+	 * Одновременно выполняется и ожидает не больше задач, чем в пуле потоков
+	 * реализации для Java 8 с его очередью. Если их больше, задачу выполняет
+	 * поток, который её передал.
+	 * @param threads Количество потоков пула для Java 8
+	 * @param queueSizePerThread Длина очереди в расчёте на один поток
+	 * @return Исполнитель задач
+	 */
+	public static ExecutorService newRenderExecutor(int threads, int queueSizePerThread) {
+		return new BoundedExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("render-", 0).factory()),
+				threads * (queueSizePerThread + 1));
+	}
+
+	/**
+	 * Создаёт диспетчер асинхронных запросов OkHttp, выполняющий каждый запрос в виртуальном потоке.
+	 * @return Диспетчер
+	 */
+	public static Dispatcher newDispatcher() {
+		return new Dispatcher(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fetch-", 0).factory()));
+	}
+
+	/**
+	 * Исполнитель, ограничивающий количество незавершённых задач другого исполнителя.
+	 * Задачу сверх ограничения выполняет поток, который её передал,
+	 * как {@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy}.
+	 */
+	private static class BoundedExecutor extends AbstractExecutorService {
+		private final ExecutorService executor;
+		private final Semaphore permits;
+
+		BoundedExecutor(ExecutorService executor, int maxTasks) {
+			this.executor = executor;
+			permits = new Semaphore(Math.max(1, maxTasks));
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			if (!permits.tryAcquire()) {
+				// После завершения работы задачи отбрасываются, как и в пуле потоков
+				if (!executor.isShutdown())
+					task.run();
+				return;
+			}
+
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						permits.release();
+					}
+				});
+			} catch (RejectedExecutionException exception) {
+				permits.release();
+				throw exception;
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			executor.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executor.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+}
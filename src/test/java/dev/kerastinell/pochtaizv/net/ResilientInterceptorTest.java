@@ -0,0 +1,109 @@
+package dev.kerastinell.pochtaizv.net;
+
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResilientInterceptorTest {
+	private static final Request REQUEST = new Request.Builder().url("http://localhost/").build();
+
+	/**
+	 * Ответ цепочки перехватчиков или исключение.
+	 */
+	private interface Proceed {
+		Response proceed(Request request) throws IOException;
+	}
+
+	/**
+	 * Создаёт цепочку перехватчиков, в которой запрос обрабатывается указанной функцией.
+	 */
+	private static Interceptor.Chain chain(Proceed proceed) {
+		return (Interceptor.Chain) Proxy.newProxyInstance(Interceptor.Chain.class.getClassLoader(),
+				new Class<?>[] { Interceptor.Chain.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "request":
+							return REQUEST;
+						case "proceed":
+							return proceed.proceed((Request) args[0]);
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static Response response(int code) {
+		return new Response.Builder()
+				.request(REQUEST)
+				.protocol(Protocol.HTTP_1_1)
+				.code(code)
+				.message("")
+				.build();
+	}
+
+	/**
+	 * Создаёт перехватчик без повторов, предохранитель которого размыкается после первой ошибки
+	 * и сразу пропускает пробный запрос, а одновременно выполняется не больше одного запроса.
+	 */
+	private static ResilientInterceptor interceptor(RateLimiter rateLimiter) {
+		return new ResilientInterceptor(rateLimiter, new AdaptiveConcurrencyLimit(1, TimeUnit.SECONDS.toNanos(10)),
+				new CircuitBreaker(1, 0), 0, 0, 0);
+	}
+
+	/**
+	 * Размыкает предохранитель перехватчика неудачным запросом.
+	 */
+	private static void openCircuit(ResilientInterceptor interceptor) {
+		try {
+			interceptor.intercept(chain(request -> { throw new IOException("Сервер недоступен"); }));
+			fail("Ожидалась ошибка запроса");
+		} catch (IOException expected) {
+			assertFalse(expected instanceof CircuitOpenException);
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void failedProbeDoesNotLockCircuit() throws IOException {
+		final ResilientInterceptor interceptor = interceptor(new RateLimiter(0));
+		openCircuit(interceptor);
+
+		// Пробный запрос завершается непредвиденным исключением
+		try {
+			interceptor.intercept(chain(request -> { throw new IllegalStateException("Пробный запрос"); }));
+			fail("Ожидалось исключение пробного запроса");
+		} catch (IllegalStateException expected) {
+			// Исключение передаётся вызывающему коду
+		}
+
+		// Следующий запрос снова становится пробным и получает место в ограничении
+		final Response response = interceptor.intercept(chain(request -> response(200)));
+		assertEquals(200, response.code());
+		assertEquals(200, interceptor.intercept(chain(request -> response(200))).code());
+	}
+
+	@Test(timeout = 5000)
+	public void interruptedProbeDoesNotLockCircuit() throws IOException {
+		// Первый запрос забирает единственный токен, и пробный запрос ожидает следующего
+		final ResilientInterceptor interceptor = interceptor(new RateLimiter(1));
+		openCircuit(interceptor);
+
+		Thread.currentThread().interrupt();
+		try {
+			interceptor.intercept(chain(request -> response(200)));
+			fail("Ожидалось прерывание пробного запроса");
+		} catch (IOException expected) {
+			assertFalse(expected instanceof CircuitOpenException);
+		} finally {
+			Thread.interrupted();
+		}
+
+		assertEquals(200, interceptor.intercept(chain(request -> response(200))).code());
+	}
+}